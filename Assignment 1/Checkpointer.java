@@ -0,0 +1,254 @@
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * This class makes command processing resumable after a crash.
+ * Every few thousand commands it appends a checkpoint to a journal file, consisting of
+ * the users and items changed since the last checkpoint, followed by a commit line with
+ * the byte offset in the commands file and the length of the output file at that point.
+ *
+ * Journal lines:
+ * - U,id,penalty,itemId;itemId;...   (state of a changed user)
+ * - I,id,available,borrowDate,borrowedBy   (state of a changed item)
+ * - C,commandsOffset,outputLength   (commits the lines above it)
+ *
+ * Only changed entities are written, so the cost of a checkpoint depends on the activity since the
+ * previous one and not on the catalog size. When the journal grows too large it is compacted
+ * into a snapshot of all entities that differ from their freshly loaded state.
+ */
+public class Checkpointer {
+    private static final long COMPACT_THRESHOLD = 64L << 20;
+
+    private final File journalFile;
+    private final int interval;
+    private final Set<User> dirtyUsers = new LinkedHashSet<>();
+    private final Set<Item> dirtyItems = new LinkedHashSet<>();
+    private FileOutputStream outputFile;
+    private FileOutputStream journalStream;
+    private BufferedWriter journal;
+    private int commandsSinceCheckpoint;
+
+    /**
+     * Creates a checkpointer.
+     *
+     * @param journalFile File the checkpoints are appended to
+     * @param interval Number of commands between two checkpoints
+     */
+
+    public Checkpointer(File journalFile, int interval) {
+        this.journalFile = journalFile;
+        this.interval = interval;
+    }
+
+    /**
+     * Restores the state saved in the journal into the processor and truncates the output file
+     * back to the length it had at the last checkpoint.
+     * If there is no usable checkpoint the output file is emptied and the run starts from the beginning.
+     *
+     * @param processor Processor that already contains the freshly loaded users and items
+     * @param output Output file of the run
+     * @return Byte offset in the commands file to resume from
+     * @throws IOException If the journal or the output file cannot be accessed
+     */
+    public long restore(CommandProcessor processor, File output) throws IOException {
+        long commandsOffset = 0;
+        long outputLength = 0;
+        long validJournalLength = 0;
+
+        List<String> committed = new ArrayList<>();
+
+        if (journalFile.exists()) {
+            List<String> pending = new ArrayList<>();
+            long position = 0;
+            try (BufferedReader br = new BufferedReader(new FileReader(journalFile))) {
+                String line;
+                while ((line = br.readLine()) != null) {
+                    position += line.getBytes().length + 1;
+                    if (line.startsWith("C,")) {
+                        String[] parts = line.split(",");
+                        committed.addAll(pending);
+                        pending.clear();
+                        commandsOffset = Long.parseLong(parts[1]);
+                        outputLength = Long.parseLong(parts[2]);
+                        validJournalLength = position;
+                    } else {
+                        pending.add(line);
+                    }
+                }
+            }
+        }
+
+        if (output.length() < outputLength) {
+            // The output lost data the checkpoint relies on, the run has to start over
+            System.err.println("Warning: output file is shorter than the last checkpoint, restarting from the beginning");
+            committed.clear();
+            commandsOffset = 0;
+            outputLength = 0;
+            validJournalLength = 0;
+        }
+        for (String entry : committed) {
+            applyEntry(processor, entry);
+        }
+
+        try (FileChannel channel = new RandomAccessFile(output, "rw").getChannel()) {
+            channel.truncate(outputLength);
+        }
+        // Drop a partially written checkpoint at the end of the journal
+        try (FileChannel channel = new RandomAccessFile(journalFile, "rw").getChannel()) {
+            channel.truncate(validJournalLength);
+        }
+        journalStream = new FileOutputStream(journalFile, true);
+        journal = new BufferedWriter(new OutputStreamWriter(journalStream), 1 << 16);
+        return commandsOffset;
+    }
+
+    /*
+    Sets the stream the output is written to, its length is recorded in every checkpoint.
+     */
+
+    public void setOutput(FileOutputStream outputFile) {
+        this.outputFile = outputFile;
+    }
+
+    // Methods for recording the entities changed by a command
+    public void markDirty(User user) {
+        dirtyUsers.add(user);
+    }
+    public void markDirty(Item item) {
+        dirtyItems.add(item);
+    }
+
+    /*
+    Called after every command with the offset of the next command, writes a checkpoint once the interval is reached.
+     */
+
+    public void commandProcessed(CommandProcessor processor, long nextOffset) throws IOException {
+        if (++commandsSinceCheckpoint >= interval) {
+            checkpoint(processor, nextOffset);
+        }
+    }
+
+    /*
+    Writes the changed users and items and commits them together with the current offsets.
+     */
+
+    public void checkpoint(CommandProcessor processor, long nextOffset) throws IOException {
+        commandsSinceCheckpoint = 0;
+
+        // The output has to be on disk before a checkpoint may refer to its length
+        System.out.flush();
+        long outputLength = outputFile.getChannel().size();
+        outputFile.getChannel().force(false);
+
+        if (journalStream.getChannel().size() > COMPACT_THRESHOLD) {
+            compact(processor, nextOffset, outputLength);
+            return;
+        }
+
+        for (User user : dirtyUsers) {
+            journal.write(userEntry(user));
+            journal.write('\n');
+        }
+        for (Item item : dirtyItems) {
+            journal.write(itemEntry(item));
+            journal.write('\n');
+        }
+        journal.write("C," + nextOffset + "," + outputLength);
+        journal.write('\n');
+        journal.flush();
+        journalStream.getChannel().force(false);
+        dirtyUsers.clear();
+        dirtyItems.clear();
+    }
+
+    /*
+    Called once all commands are processed, a finished run leaves no journal behind.
+     */
+
+    public void finish() throws IOException {
+        journal.close();
+        Files.deleteIfExists(journalFile.toPath());
+    }
+
+    /*
+    Replaces the journal with a snapshot of every user and item that differs from its loaded state.
+     */
+
+    private void compact(CommandProcessor processor, long nextOffset, long outputLength) throws IOException {
+        journal.close();
+        File snapshot = new File(journalFile.getPath() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(snapshot);
+             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(stream), 1 << 16)) {
+            for (User user : processor.getUsers()) {
+                if (user.getPenalty() != 0 || !user.getBorrowedItems().isEmpty()) {
+                    writer.write(userEntry(user));
+                    writer.write('\n');
+                }
+            }
+            for (Item item : processor.getItems()) {
+                if (!item.isAvailable()) {
+                    writer.write(itemEntry(item));
+                    writer.write('\n');
+                }
+            }
+            writer.write("C," + nextOffset + "," + outputLength);
+            writer.write('\n');
+            writer.flush();
+            stream.getChannel().force(false);
+        }
+        Files.move(snapshot.toPath(), journalFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        journalStream = new FileOutputStream(journalFile, true);
+        journal = new BufferedWriter(new OutputStreamWriter(journalStream), 1 << 16);
+        dirtyUsers.clear();
+        dirtyItems.clear();
+    }
+
+    private static String userEntry(User user) {
+        StringBuilder entry = new StringBuilder("U,").append(user.getId()).append(',').append(user.getPenalty()).append(',');
+        List<Item> borrowed = user.getBorrowedItems();
+        for (int i = 0; i < borrowed.size(); i++) {
+            if (i > 0) {
+                entry.append(';');
+            }
+            entry.append(borrowed.get(i).getId());
+        }
+        return entry.toString();
+    }
+
+    private static String itemEntry(Item item) {
+        if (item.isAvailable()) {
+            return "I," + item.getId() + ",1,,";
+        }
+        return "I," + item.getId() + ",0," + item.getBorrowDate() + "," + item.getBorrowedBy();
+    }
+
+    /*
+    Applies one journal line to the processor.
+     */
+
+    private static void applyEntry(CommandProcessor processor, String entry) {
+        if (entry.startsWith("U,")) {
+            String[] parts = entry.split(",", 4);
+            User user = processor.getUser(parts[1]);
+            List<Item> borrowed = new ArrayList<>();
+            if (!parts[3].isEmpty()) {
+                for (String itemId : parts[3].split(";")) {
+                    borrowed.add(processor.getItem(itemId));
+                }
+            }
+            user.restoreState(Double.parseDouble(parts[2]), borrowed);
+        } else if (entry.startsWith("I,")) {
+            String[] parts = entry.split(",", 5);
+            Item item = processor.getItem(parts[1]);
+            if (parts[2].equals("1")) {
+                item.returnItem();
+            } else {
+                item.borrow(parts[3], parts[4]);
+            }
+        }
+    }
+}
@@ -1,4 +1,5 @@
 import java.io.BufferedReader;
+import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.time.LocalDate;
@@ -12,7 +13,31 @@ import java.util.*;
  */
 public class CommandProcessor {
     private Map<String, User> users = new HashMap<>();
-    private Map<String, Item> items = new HashMap<>();
+    private ItemStore items;
+    private Checkpointer checkpointer;
+    private LibraryEventPublisher events;
+
+    // Bounded summaries of the most borrowed items and most penalized users
+    private SpaceSaving<String> topBorrowedItems = new SpaceSaving<>(1024);
+    private CountMinSketch borrowCounts = new CountMinSketch(4, 1 << 14);
+    private SpaceSaving<String> topPenalizedUsers = new SpaceSaving<>(1024);
+    private CountMinSketch penaltyCounts = new CountMinSketch(4, 1 << 14);
+
+    /*
+    Creates a processor that keeps its items as normal objects on the heap.
+     */
+
+    public CommandProcessor() {
+        this(new HeapItemStore());
+    }
+
+    /*
+    Creates a processor that keeps its items in the given store.
+     */
+
+    public CommandProcessor(ItemStore items) {
+        this.items = items;
+    }
 
     /*
     Processes a file containing library commands line by line.
@@ -29,16 +54,68 @@ public class CommandProcessor {
         }
     }
 
+    /*
+    Processes the commands file starting at the given byte offset and reports progress to the checkpointer,
+    so that an interrupted run can be resumed from its last checkpoint.
+     */
+
+    public void processCommands(String commandsFile, Checkpointer checkpointer, long startOffset) {
+        this.checkpointer = checkpointer;
+        try (FileInputStream in = new FileInputStream(commandsFile)) {
+            in.getChannel().position(startOffset);
+            byte[] buffer = new byte[1 << 16];
+            byte[] line = new byte[256];
+            int length = 0;
+            long offset = startOffset;
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                for (int i = 0; i < read; i++) {
+                    offset++;
+                    if (buffer[i] == '\n') {
+                        processLine(line, length, offset);
+                        length = 0;
+                    } else {
+                        if (length == line.length) {
+                            line = Arrays.copyOf(line, length * 2);
+                        }
+                        line[length++] = buffer[i];
+                    }
+                }
+            }
+            if (length > 0) {
+                processLine(line, length, offset);
+            }
+            checkpointer.finish();
+        } catch (IOException e) {
+            System.out.println("Error while reading commands: " + e.getMessage());
+        } finally {
+            this.checkpointer = null;
+        }
+    }
+
+    /*
+    Executes one line read by the checkpointed loop, the byte offset after the line is passed on to the checkpointer.
+     */
+
+    private void processLine(byte[] line, int length, long nextOffset) throws IOException {
+        // Same as BufferedReader, a trailing carriage return is not part of the line
+        int end = (length > 0 && line[length - 1] == '\r') ? length - 1 : length;
+        processCommand(new String(line, 0, end));
+        checkpointer.commandProcessed(this, nextOffset);
+    }
+
     /*
     Parses and executes a single command from the commands file
      */
 
-    private void processCommand(String command) {
+    void processCommand(String command) {
         String[] tokens = command.split(",");
         String action = tokens[0];
 
         if (action.equals("borrow")) {
             borrowItem(tokens);
+        } else if (action.equals("borrowBatch")) {
+            borrowBatch(tokens);
         } else if (action.equals("return")) {
             returnItem(tokens);
         } else if (action.equals("pay")) {
@@ -47,7 +124,35 @@ public class CommandProcessor {
             displayUsers();
         } else if (action.equals("displayItems")) {
             displayItems();
+        } else if (action.equals("topItems")) {
+            int k = parseTopCount(tokens);
+            if (k > 0) {
+                displayTopItems(k);
+            }
+        } else if (action.equals("topPenalized")) {
+            int k = parseTopCount(tokens);
+            if (k > 0) {
+                displayTopPenalized(k);
+            }
+        }
+    }
+
+    /*
+    Returns the count of a topItems or topPenalized command, or prints an error line and returns -1
+    if it is missing, not a number or not positive.
+     */
+
+    private static int parseTopCount(String[] tokens) {
+        try {
+            int k = Integer.parseInt(tokens.length > 1 ? tokens[1].trim() : "");
+            if (k > 0) {
+                return k;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below like a count that is not positive
         }
+        System.out.println("Error: " + tokens[0] + " needs a positive count: " + String.join(",", tokens));
+        return -1;
     }
 
     /*
@@ -63,54 +168,152 @@ public class CommandProcessor {
         Item item = items.get(itemId);
 
         // Validate borrowing conditions
-        if (!item.isAvailable()) {
-            System.out.println(user.getUserName() + " cannot borrow " + item.getTitle() + ", it is not available!");
+        LibraryEvent.Reason rejection = checkBorrow(user, item, user.getPenalty(), user.getBorrowedItems().size());
+        if (rejection != null) {
+            System.out.println(rejectionMessage(user, item, rejection));
+            publishRejection(userId, itemId, rejection);
             return;
         }
 
-        if (user.getPenalty() >= 6.0) {
-            System.out.println(user.getUserName() + " cannot borrow " + item.getTitle() + ", you must first pay the penalty amount! 6$");
-            return;
+        StringBuilder output = new StringBuilder();
+        completeBorrow(user, item, borrowDateStr, isLate(user, borrowDateStr), output);
+        System.out.print(output);
+    }
+
+    /*
+    Handles borrowing several items at once. The items are checked together and either all of them
+    are borrowed with a single output block, or none of them is.
+     */
+
+    private void borrowBatch(String[] tokens) {
+        String userId = tokens[1];
+        String borrowDateStr = tokens[2];
+        String[] itemIds = tokens[3].split(";");
+
+        User user = users.get(userId);
+        Item[] batch = new Item[itemIds.length];
+        for (int i = 0; i < itemIds.length; i++) {
+            batch[i] = items.get(itemIds[i]);
         }
 
-        if (user.getBorrowedItems().size() >= user.getMaxItems()) {
-            System.out.println(user.getUserName() + " cannot borrow " + item.getTitle() + ", since the borrow limit has been reached");
-            return;
+        // Every item is checked against the state the user would have after borrowing the items before it,
+        // so the batch succeeds exactly when the same borrow commands one by one would all succeed
+        boolean late = isLate(user, borrowDateStr);
+        double penalty = user.getPenalty();
+        int borrowedCount = user.getBorrowedItems().size();
+        Set<Item> seen = new HashSet<>();
+        for (Item item : batch) {
+            LibraryEvent.Reason rejection = seen.add(item)
+                    ? checkBorrow(user, item, penalty, borrowedCount)
+                    : LibraryEvent.Reason.NOT_AVAILABLE;
+            if (rejection != null) {
+                System.out.print(rejectionMessage(user, item, rejection) + System.lineSeparator()
+                        + user.getUserName() + "'s batch borrow is cancelled, no items were borrowed" + System.lineSeparator());
+                publishRejection(userId, item.getId(), rejection);
+                return;
+            }
+            if (late) {
+                penalty += 2.0;
+            }
+            borrowedCount++;
+        }
+
+        StringBuilder output = new StringBuilder();
+        for (Item item : batch) {
+            completeBorrow(user, item, borrowDateStr, late, output);
+        }
+        System.out.print(output);
+    }
+
+    /*
+    Checks whether the user may borrow the item, given the user's penalty and number of borrowed items.
+    Returns the reason of the rejection, or null if borrowing is allowed.
+     */
+
+    private LibraryEvent.Reason checkBorrow(User user, Item item, double penalty, int borrowedCount) {
+        if (!item.isAvailable()) {
+            return LibraryEvent.Reason.NOT_AVAILABLE;
+        }
+        if (penalty >= 6.0) {
+            return LibraryEvent.Reason.PENALTY_DUE;
+        }
+        if (borrowedCount >= user.getMaxItems()) {
+            return LibraryEvent.Reason.LIMIT_REACHED;
         }
 
         // Checking item type restrictions
         if (item.getType().equals("reference") && user instanceof Student) {
-            System.out.println(user.getUserName() + " cannot borrow reference item!");
-            return;
+            return LibraryEvent.Reason.REFERENCE_ITEM;
         }
-
         if (item.getType().equals("rare") && user instanceof Guest) {
-            System.out.println(user.getUserName() + " cannot borrow rare item!");
-            return;
+            return LibraryEvent.Reason.RARE_ITEM;
         }
-
         if (item.getType().equals("limited") && user instanceof Guest) {
-            System.out.println(user.getUserName() + " cannot borrow limited item!");
-            return;
+            return LibraryEvent.Reason.LIMITED_ITEM;
         }
+        return null;
+    }
 
-        // Calculating and applying penalty if the item is not returned at the time they should've
+    private static String rejectionMessage(User user, Item item, LibraryEvent.Reason reason) {
+        switch (reason) {
+            case NOT_AVAILABLE:
+                return user.getUserName() + " cannot borrow " + item.getTitle() + ", it is not available!";
+            case PENALTY_DUE:
+                return user.getUserName() + " cannot borrow " + item.getTitle() + ", you must first pay the penalty amount! 6$";
+            case LIMIT_REACHED:
+                return user.getUserName() + " cannot borrow " + item.getTitle() + ", since the borrow limit has been reached";
+            case REFERENCE_ITEM:
+                return user.getUserName() + " cannot borrow reference item!";
+            case RARE_ITEM:
+                return user.getUserName() + " cannot borrow rare item!";
+            default:
+                return user.getUserName() + " cannot borrow limited item!";
+        }
+    }
+
+    /*
+    Checks whether the borrow date is further in the past than the user may keep an item.
+     */
+
+    private static boolean isLate(User user, String borrowDateStr) {
         LocalDate borrowDate = LocalDate.parse(borrowDateStr, DateTimeFormatter.ofPattern("dd/MM/yyyy"));
         LocalDate currentDate = LocalDate.now();
         long daysBorrowed = ChronoUnit.DAYS.between(borrowDate, currentDate) + 1;
         int maxDaysAllowed = user.getMaxDaysAllowed();
         long daysLate = Math.max(daysBorrowed - maxDaysAllowed, 0);
+        return daysLate > 0;
+    }
 
-        if (daysLate > 0) {
+    /*
+    Borrows an already validated item and appends the success message to the output.
+     */
+
+    private void completeBorrow(User user, Item item, String borrowDateStr, boolean late, StringBuilder output) {
+        String userId = user.getId();
+        String itemId = item.getId();
+
+        // Applying penalty if the item is not returned at the time they should've
+        if (late) {
             double penalty = 2.0;
             user.addPenalty(penalty);
             item.returnItem();
+            topPenalizedUsers.add(userId);
+            penaltyCounts.add(userId);
+            if (events != null) {
+                events.publish(LibraryEvent.Type.PENALTY_ADDED, userId, itemId, penalty, null);
+            }
         }
 
         // Completing the borrowing process
         item.borrow(borrowDateStr, user.getUserName());
         user.borrowItem(item);
-        System.out.println(user.getUserName() + " successfully borrowed! " + item.getTitle());
+        markDirty(user, item);
+        topBorrowedItems.add(itemId);
+        borrowCounts.add(itemId);
+        output.append(user.getUserName()).append(" successfully borrowed! ").append(item.getTitle()).append(System.lineSeparator());
+        if (events != null) {
+            events.publish(LibraryEvent.Type.BORROWED, userId, itemId, 0, null);
+        }
     }
 
     /*
@@ -126,7 +329,11 @@ public class CommandProcessor {
 
         user.returnItem(item);
         item.returnItem();
+        markDirty(user, item);
         System.out.println(user.getUserName() + " successfully returned " + item.getTitle());
+        if (events != null) {
+            events.publish(LibraryEvent.Type.RETURNED, userId, itemId, 0, null);
+        }
     }
 
     /*
@@ -138,8 +345,13 @@ public class CommandProcessor {
         User user = users.get(userId);
 
         double paidAmount = 6.0;
+        double penaltyBefore = user.getPenalty();
         user.reducePenalty(paidAmount);
+        markDirty(user, null);
         System.out.println(user.getUserName() + " has paid penalty");
+        if (events != null) {
+            events.publish(LibraryEvent.Type.PENALTY_PAID, userId, null, penaltyBefore - user.getPenalty(), null);
+        }
     }
 
     /*
@@ -161,11 +373,69 @@ public class CommandProcessor {
 
     private void displayItems() {
         System.out.println();
-        List<Item> copy = new ArrayList<>(items.values());
-        copy.sort(Comparator.comparing(Item::getId));
-        for (Item item : copy) {
-            item.displayItemDetails();
+        items.forEachSortedById(Item::displayItemDetails);
+    }
+
+    /*
+    Publishes a rejected borrow, if anyone listens to the events.
+     */
+
+    private void publishRejection(String userId, String itemId, LibraryEvent.Reason reason) {
+        if (events != null) {
+            events.publish(LibraryEvent.Type.REJECTED, userId, itemId, 0, reason);
+        }
+    }
+
+    /*
+    Sets the publisher that receives an event for every change, null turns events off.
+     */
+
+    public void setEventPublisher(LibraryEventPublisher events) {
+        this.events = events;
+    }
+
+    /*
+    Records the changed user and item for the next checkpoint, if the run is checkpointed.
+     */
+
+    private void markDirty(User user, Item item) {
+        if (checkpointer != null) {
+            checkpointer.markDirty(user);
+            if (item != null) {
+                checkpointer.markDirty(item);
+            }
+        }
+    }
+
+    /*
+    Displays the most borrowed items. Counts come from the Space-Saving summary,
+    tightened by the Count-Min estimate since both can only overestimate.
+     */
+
+    private void displayTopItems(int k) {
+        System.out.println("------ Top " + k + " Borrowed Items ------");
+        int rank = 1;
+        for (SpaceSaving.Entry<String> entry : topBorrowedItems.top(k)) {
+            long count = Math.min(entry.getCount(), borrowCounts.estimate(entry.getKey()));
+            Item item = items.get(entry.getKey());
+            System.out.println(rank++ + ". " + entry.getKey() + " " + (item != null ? item.getTitle() : "") + ": " + count + " borrows");
+        }
+        System.out.println();
+    }
+
+    /*
+    Displays the users that were penalized most often, estimated in the same way as the top items.
+     */
+
+    private void displayTopPenalized(int k) {
+        System.out.println("------ Top " + k + " Penalized Users ------");
+        int rank = 1;
+        for (SpaceSaving.Entry<String> entry : topPenalizedUsers.top(k)) {
+            long count = Math.min(entry.getCount(), penaltyCounts.estimate(entry.getKey()));
+            User user = users.get(entry.getKey());
+            System.out.println(rank++ + ". " + entry.getKey() + " " + (user != null ? user.getUserName() : "") + ": " + count + " penalties");
         }
+        System.out.println();
     }
 
     /*
@@ -181,6 +451,20 @@ public class CommandProcessor {
      */
 
     public void addItem(Item item) {
-        items.put(item.getId(), item);
+        items.add(item);
+    }
+
+    // Getter Methods used for restoring checkpoints
+    public User getUser(String id) {
+        return users.get(id);
+    }
+    public Item getItem(String id) {
+        return items.get(id);
+    }
+    public Collection<User> getUsers() {
+        return users.values();
+    }
+    public Iterable<Item> getItems() {
+        return items.all();
     }
-}
+}
\ No newline at end of file
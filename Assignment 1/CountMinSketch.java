@@ -0,0 +1,53 @@
+/**
+ * This class estimates how often keys occurred in a stream using a fixed amount of memory (Count-Min sketch).
+ * Estimates are never too low, and with width w they are too high by at most e/w of the stream length
+ * with a probability depending on the depth.
+ */
+public class CountMinSketch {
+    private final long[][] table;
+    private final int mask;
+
+    /**
+     * Creates an empty sketch.
+     *
+     * @param depth Number of hash rows
+     * @param width Counters per row, rounded up to a power of two
+     */
+
+    public CountMinSketch(int depth, int width) {
+        int roundedWidth = Integer.highestOneBit(Math.max(2, width - 1)) << 1;
+        this.table = new long[depth][roundedWidth];
+        this.mask = roundedWidth - 1;
+    }
+
+    /*
+    Counts one occurrence of the key.
+     */
+
+    public void add(Object key) {
+        int hash = key.hashCode();
+        for (int row = 0; row < table.length; row++) {
+            table[row][index(hash, row)]++;
+        }
+    }
+
+    /*
+    Returns the estimated number of occurrences of the key.
+     */
+
+    public long estimate(Object key) {
+        int hash = key.hashCode();
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < table.length; row++) {
+            estimate = Math.min(estimate, table[row][index(hash, row)]);
+        }
+        return estimate;
+    }
+
+    // Derives an independent index for every row from the key's hash
+    private int index(int hash, int row) {
+        long h = (hash + 0x9E3779B97F4A7C15L * (row + 1)) * 0xBF58476D1CE4E5B9L;
+        h ^= h >>> 31;
+        return (int) h & mask;
+    }
+}
@@ -30,6 +30,15 @@ public abstract class Item {
         this.borrowedBy = null;
     }
 
+    /*
+    Constructs an item whose data is kept outside of this object, used by the views of OffHeapItemStore.
+    Such subclasses override every getter and the borrow/return methods.
+     */
+
+    protected Item() {
+        this.isAvailable = true;
+    }
+
     // Getter Methods
     public String getTitle() {
         return title;
@@ -95,12 +104,17 @@ class Book extends Item {
 
     @Override
     public void displayItemDetails() {
-        System.out.println("------ Item Information for " + getId() + " ------");
-        System.out.println("ID: " + getId() + " Name: " + getTitle() + " Status: " + (isAvailable() ? "Available" : "Borrowed"));
-        if (!isAvailable()) {
-            System.out.println("Borrowed Date: " + ((Book) this).getBorrowDate() + "Borrowed By: " + ((Book) this).getBorrowedBy());
+        printDetails(getId(), getTitle(), isAvailable(), getBorrowDate(), getBorrowedBy(), getAuthor(), getCategory());
+    }
+
+    // Prints the details of a book, also used for books kept in an OffHeapItemStore
+    static void printDetails(String id, String title, boolean available, String borrowDate, String borrowedBy, String author, String category) {
+        System.out.println("------ Item Information for " + id + " ------");
+        System.out.println("ID: " + id + " Name: " + title + " Status: " + (available ? "Available" : "Borrowed"));
+        if (!available) {
+            System.out.println("Borrowed Date: " + borrowDate + "Borrowed By: " + borrowedBy);
         }
-        System.out.println("Author: " + getAuthor() + " Genre: " + getCategory());
+        System.out.println("Author: " + author + " Genre: " + category);
         System.out.println();
     }
 }
@@ -139,12 +153,17 @@ class DVD extends Item {
 
     @Override
     public void displayItemDetails() {
-        System.out.println("------ Item Information for " + getId() + " ------");
-        System.out.println("ID: " + getId() + " Name: " + getTitle() + " Status: " + (isAvailable() ? "Available" : "Borrowed"));
-        if (!isAvailable()) {
-            System.out.println("Borrowed Date: " + ((DVD) this).getBorrowDate() + " Borrowed by: " + ((DVD) this).getBorrowedBy());
+        printDetails(getId(), getTitle(), isAvailable(), getBorrowDate(), getBorrowedBy(), getDirector(), getRuntime());
+    }
+
+    // Prints the details of a DVD, also used for DVDs kept in an OffHeapItemStore
+    static void printDetails(String id, String title, boolean available, String borrowDate, String borrowedBy, String director, String runtime) {
+        System.out.println("------ Item Information for " + id + " ------");
+        System.out.println("ID: " + id + " Name: " + title + " Status: " + (available ? "Available" : "Borrowed"));
+        if (!available) {
+            System.out.println("Borrowed Date: " + borrowDate + " Borrowed by: " + borrowedBy);
         }
-        System.out.println("Director: " + getDirector() + " Runtime: " + getRuntime());
+        System.out.println("Director: " + director + " Runtime: " + runtime);
         System.out.println();
     }
 }
@@ -177,12 +196,17 @@ class Magazine extends Item {
 
     @Override
     public void displayItemDetails() {
-        System.out.println("------ Item Information for " + getId() + " ------");
-        System.out.println("ID: " + getId() + " Name: " + getTitle() + " Status: " + (isAvailable() ? "Available" : "Not Available"));
-        if (!isAvailable()) {
-            System.out.println("Borrowed Date: " + ((Magazine)this).getBorrowDate() + " Borrowed By: " + ((Magazine)this).getBorrowedBy());
+        printDetails(getId(), getTitle(), isAvailable(), getBorrowDate(), getBorrowedBy(), getPublisher(), getCategory());
+    }
+
+    // Prints the details of a magazine, also used for magazines kept in an OffHeapItemStore
+    static void printDetails(String id, String title, boolean available, String borrowDate, String borrowedBy, String publisher, String category) {
+        System.out.println("------ Item Information for " + id + " ------");
+        System.out.println("ID: " + id + " Name: " + title + " Status: " + (available ? "Available" : "Not Available"));
+        if (!available) {
+            System.out.println("Borrowed Date: " + borrowDate + " Borrowed By: " + borrowedBy);
         }
-        System.out.println("Publisher: " + getPublisher() + " Category: " + getCategory());
+        System.out.println("Publisher: " + publisher + " Category: " + category);
         System.out.println();
     }
 }
\ No newline at end of file
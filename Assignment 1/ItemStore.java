@@ -0,0 +1,69 @@
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * This interface describes where the library keeps its items.
+ * CommandProcessor only works through it, so items can either live on the heap
+ * as normal objects (HeapItemStore) or in off-heap columns (OffHeapItemStore).
+ */
+public interface ItemStore {
+
+    /*
+    Adds an item, replacing an item with the same ID.
+     */
+    void add(Item item);
+
+    /*
+    Returns the item with the given ID, or null if there is none.
+     */
+    Item get(String id);
+
+    /*
+    Returns the number of items in the store.
+     */
+    int size();
+
+    /*
+    Returns all items in no particular order.
+     */
+    Iterable<Item> all();
+
+    /*
+    Passes all items to the action, sorted by their ID as text.
+     */
+    void forEachSortedById(Consumer<Item> action);
+}
+
+/**
+ * Keeps the items as normal objects in a HashMap, this is the default store.
+ */
+class HeapItemStore implements ItemStore {
+    private Map<String, Item> items = new HashMap<>();
+
+    @Override
+    public void add(Item item) {
+        items.put(item.getId(), item);
+    }
+
+    @Override
+    public Item get(String id) {
+        return items.get(id);
+    }
+
+    @Override
+    public int size() {
+        return items.size();
+    }
+
+    @Override
+    public Iterable<Item> all() {
+        return items.values();
+    }
+
+    @Override
+    public void forEachSortedById(Consumer<Item> action) {
+        List<Item> copy = new ArrayList<>(items.values());
+        copy.sort(Comparator.comparing(Item::getId));
+        copy.forEach(action);
+    }
+}
@@ -0,0 +1,280 @@
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+
+/**
+ * This class is a small benchmark harness for the library system.
+ * It measures the throughput of borrow/return/pay commands, rendering of displayItems
+ * and parsing speed of ReadItems/ReadUsers over generated catalogs.
+ * Item popularity follows a Zipf distribution and every result is reported with its allocation rate.
+ *
+ * Usage: java LibraryBenchmark [sizes=1000,1000000] [mixes=60:30:10,20:20:60] [zipf=1.0]
+ *                              [warmup=2] [iterations=5] [time=1] [scenarios=borrowReturn,pay,displayItems,readItems,readUsers]
+ *
+ * Mixes are given as student:academic:guest percentages.
+ */
+public class LibraryBenchmark {
+    private static final int COMMAND_POOL_SIZE = 1 << 16;
+    private static final PrintStream NULL_OUT = new PrintStream(OutputStream.nullOutputStream());
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static int warmupIterations = 2;
+    private static int measureIterations = 5;
+    private static long iterationNanos = 1_000_000_000L;
+
+    /**
+     * Runs every selected scenario for every catalog size and user mix.
+     *
+     * @param args Optional key=value settings, see the class documentation
+     * @throws IOException If the temporary data files cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] pair = arg.split("=", 2);
+            options.put(pair[0], pair.length > 1 ? pair[1] : "");
+        }
+        String[] sizes = options.getOrDefault("sizes", "1000,1000000").split(",");
+        String[] mixes = options.getOrDefault("mixes", "60:30:10,20:20:60").split(",");
+        double exponent = Double.parseDouble(options.getOrDefault("zipf", "1.0"));
+        warmupIterations = Integer.parseInt(options.getOrDefault("warmup", "2"));
+        measureIterations = Integer.parseInt(options.getOrDefault("iterations", "5"));
+        iterationNanos = (long) (Double.parseDouble(options.getOrDefault("time", "1")) * 1_000_000_000L);
+        Set<String> scenarios = new HashSet<>(Arrays.asList(
+                options.getOrDefault("scenarios", "borrowReturn,pay,displayItems,readItems,readUsers").split(",")));
+
+        PrintStream report = System.out;
+        report.printf("%-14s %10s %10s %14s %12s %12s%n", "Scenario", "Items", "Mix", "ops/s", "alloc MB/s", "B/op");
+
+        for (String sizeStr : sizes) {
+            int itemCount = Integer.parseInt(sizeStr.trim());
+            int userCount = Math.max(10, itemCount / 10);
+            for (String mix : mixes) {
+                int[] shares = parseMix(mix);
+                List<Item> items = createItems(itemCount);
+                List<User> users = createUsers(userCount, shares);
+
+                CommandProcessor processor = new CommandProcessor();
+                for (Item item : items) {
+                    processor.addItem(item);
+                }
+                for (User user : users) {
+                    processor.addUser(user);
+                }
+
+                // Commands are prepared up front so that building the strings is not measured
+                Zipf popularity = new Zipf(itemCount, exponent, 42L);
+                SplittableRandom random = new SplittableRandom(7L);
+                String today = LocalDate.now().format(DateTimeFormatter.ofPattern("dd/MM/yyyy"));
+                String[] borrows = new String[COMMAND_POOL_SIZE];
+                String[] returns = new String[COMMAND_POOL_SIZE];
+                String[] pays = new String[COMMAND_POOL_SIZE];
+                for (int i = 0; i < COMMAND_POOL_SIZE; i++) {
+                    String userId = users.get(random.nextInt(userCount)).getId();
+                    String itemId = items.get(popularity.next() - 1).getId();
+                    borrows[i] = "borrow," + userId + "," + itemId + "," + today;
+                    returns[i] = "return," + userId + "," + itemId;
+                    pays[i] = "pay," + userId;
+                }
+
+                System.setOut(NULL_OUT);
+                try {
+                    if (scenarios.contains("borrowReturn")) {
+                        int[] cursor = {0};
+                        Result result = measure(() -> {
+                            int i = cursor[0]++ & (COMMAND_POOL_SIZE - 1);
+                            processor.processCommand(borrows[i]);
+                            processor.processCommand(returns[i]);
+                        }, 2);
+                        result.print(report, "borrowReturn", itemCount, mix);
+                    }
+                    if (scenarios.contains("pay")) {
+                        int[] cursor = {0};
+                        Result result = measure(() -> processor.processCommand(pays[cursor[0]++ & (COMMAND_POOL_SIZE - 1)]), 1);
+                        result.print(report, "pay", itemCount, mix);
+                    }
+                    if (scenarios.contains("displayItems")) {
+                        Result result = measure(() -> processor.processCommand("displayItems"), 1);
+                        result.print(report, "displayItems", itemCount, mix);
+                    }
+                    if (scenarios.contains("readItems")) {
+                        File itemsFile = writeItemsFile(items);
+                        Result result = measure(() -> {
+                            try {
+                                ReadItems.readItemsFromFile(itemsFile.getPath());
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        }, 1);
+                        result.print(report, "readItems", itemCount, mix);
+                        itemsFile.delete();
+                    }
+                    if (scenarios.contains("readUsers")) {
+                        File usersFile = writeUsersFile(users);
+                        Result result = measure(() -> {
+                            try {
+                                ReadUsers.readUsersFromFile(usersFile.getPath());
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        }, 1);
+                        result.print(report, "readUsers", itemCount, mix);
+                        usersFile.delete();
+                    }
+                } finally {
+                    System.setOut(report);
+                }
+            }
+        }
+    }
+
+    /*
+    Runs warmup iterations, then measurement iterations, and sums up operations, time and allocated bytes.
+     */
+
+    private static Result measure(Runnable operation, int opsPerCall) {
+        long threadId = Thread.currentThread().getId();
+        Result result = new Result();
+        for (int iteration = 0; iteration < warmupIterations + measureIterations; iteration++) {
+            long allocatedBefore = THREADS.getThreadAllocatedBytes(threadId);
+            long start = System.nanoTime();
+            long calls = 0;
+            long elapsed;
+            do {
+                operation.run();
+                calls++;
+                elapsed = System.nanoTime() - start;
+            } while (elapsed < iterationNanos);
+            long allocated = THREADS.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+            if (iteration >= warmupIterations) {
+                result.operations += calls * opsPerCall;
+                result.nanos += elapsed;
+                result.allocatedBytes += allocated;
+            }
+        }
+        return result;
+    }
+
+    /*
+    Creates a catalog with 60% books, 20% DVDs and 20% magazines, mostly of normal type.
+     */
+
+    private static List<Item> createItems(int count) {
+        String[] types = {"normal", "normal", "normal", "normal", "normal", "normal", "reference", "rare", "limited", "normal"};
+        List<Item> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String id = String.valueOf(100000 + i);
+            String type = types[i % types.length];
+            switch (i % 5) {
+                case 0:
+                case 1:
+                case 2:
+                    items.add(new Book(id, "Book Title " + i, "Author " + (i % 997), "Fiction", type));
+                    break;
+                case 3:
+                    items.add(new DVD(id, "DVD Title " + i, "Director " + (i % 499), "Drama", (90 + i % 60) + " min", type));
+                    break;
+                default:
+                    items.add(new Magazine(id, "Magazine Title " + i, "Publisher " + (i % 211), "Science", type));
+                    break;
+            }
+        }
+        return items;
+    }
+
+    /*
+    Creates users according to the student:academic:guest percentages.
+     */
+
+    private static List<User> createUsers(int count, int[] shares) {
+        List<User> users = new ArrayList<>(count);
+        int total = shares[0] + shares[1] + shares[2];
+        for (int i = 0; i < count; i++) {
+            String id = String.valueOf(500000 + i);
+            int slot = i % total;
+            if (slot < shares[0]) {
+                users.add(new Student("Student " + i, id, "555-0000", "Computer Science", "Engineering", "2"));
+            } else if (slot < shares[0] + shares[1]) {
+                users.add(new Academic("Academic " + i, id, "555-0000", "Physics", "Science", "Professor"));
+            } else {
+                users.add(new Guest("Guest " + i, id, "555-0000", "Writer"));
+            }
+        }
+        return users;
+    }
+
+    private static int[] parseMix(String mix) {
+        String[] parts = mix.split(":");
+        return new int[]{Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), Integer.parseInt(parts[2])};
+    }
+
+    /*
+    Writes the catalog in the format read by ReadItems.
+     */
+
+    private static File writeItemsFile(List<Item> items) throws IOException {
+        File file = File.createTempFile("bench-items", ".txt");
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file), 1 << 16)) {
+            for (Item item : items) {
+                if (item instanceof Book) {
+                    Book book = (Book) item;
+                    writer.write("B," + book.getId() + "," + book.getTitle() + "," + book.getAuthor() + "," + book.getCategory() + "," + book.getType());
+                } else if (item instanceof DVD) {
+                    DVD dvd = (DVD) item;
+                    writer.write("D," + dvd.getId() + "," + dvd.getTitle() + "," + dvd.getDirector() + "," + dvd.getCategory() + "," + dvd.getRuntime() + "," + dvd.getType());
+                } else {
+                    Magazine magazine = (Magazine) item;
+                    writer.write("M," + magazine.getId() + "," + magazine.getTitle() + "," + magazine.getPublisher() + "," + magazine.getCategory() + "," + magazine.getType());
+                }
+                writer.newLine();
+            }
+        }
+        return file;
+    }
+
+    /*
+    Writes the users in the format read by ReadUsers.
+     */
+
+    private static File writeUsersFile(List<User> users) throws IOException {
+        File file = File.createTempFile("bench-users", ".txt");
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file), 1 << 16)) {
+            for (User user : users) {
+                if (user instanceof Student) {
+                    Student student = (Student) user;
+                    writer.write("S," + student.getUserName() + "," + student.getId() + "," + student.getPhoneNumber() + "," + student.getDepartment() + "," + student.getFaculty() + "," + student.getGrade());
+                } else if (user instanceof Academic) {
+                    Academic academic = (Academic) user;
+                    writer.write("A," + academic.getUserName() + "," + academic.getId() + "," + academic.getPhoneNumber() + "," + academic.getDepartment() + "," + academic.getFaculty() + "," + academic.getTitle());
+                } else {
+                    Guest guest = (Guest) user;
+                    writer.write("G," + guest.getUserName() + "," + guest.getId() + "," + guest.getPhoneNumber() + "," + guest.getOccupation());
+                }
+                writer.newLine();
+            }
+        }
+        return file;
+    }
+
+    /*
+    Holds the measured totals of one scenario.
+     */
+
+    private static class Result {
+        long operations;
+        long nanos;
+        long allocatedBytes;
+
+        void print(PrintStream out, String scenario, int items, String mix) {
+            double seconds = nanos / 1e9;
+            out.printf("%-14s %10d %10s %14.1f %12.1f %12.1f%n", scenario, items, mix,
+                    operations / seconds,
+                    allocatedBytes / seconds / (1024 * 1024),
+                    (double) allocatedBytes / operations);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/**
+ * This class represents a change in the library, published by CommandProcessor to event subscribers.
+ * Events are reused by the publisher to avoid allocation, so a subscriber must copy
+ * the values it wants to keep before its onNext method returns.
+ */
+public class LibraryEvent {
+
+    /*
+    Kinds of changes that are published.
+     */
+    public enum Type {
+        BORROWED, RETURNED, PENALTY_ADDED, PENALTY_PAID, REJECTED
+    }
+
+    /*
+    Reasons for a rejected borrow, matching the messages written by CommandProcessor.
+     */
+    public enum Reason {
+        NOT_AVAILABLE, PENALTY_DUE, LIMIT_REACHED, REFERENCE_ITEM, RARE_ITEM, LIMITED_ITEM
+    }
+
+    private long sequence;
+    private Type type;
+    private String userId;
+    private String itemId;
+    private double amount;
+    private Reason reason;
+
+    // Getter Methods
+    public long getSequence() {
+        return sequence;
+    }
+    public Type getType() {
+        return type;
+    }
+    public String getUserId() {
+        return userId;
+    }
+    public String getItemId() {
+        return itemId;
+    }
+    public double getAmount() {
+        return amount;
+    }
+    public Reason getReason() {
+        return reason;
+    }
+
+    // Fills the event in place, used by the publisher when reusing ring slots
+    void set(long sequence, Type type, String userId, String itemId, double amount, Reason reason) {
+        this.sequence = sequence;
+        this.type = type;
+        this.userId = userId;
+        this.itemId = itemId;
+        this.amount = amount;
+        this.reason = reason;
+    }
+
+    // Creates a copy that can be kept after onNext returns
+    public LibraryEvent copy() {
+        LibraryEvent copy = new LibraryEvent();
+        copy.set(sequence, type, userId, itemId, amount, reason);
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        return "#" + sequence + " " + type + " user=" + userId
+                + (itemId != null ? " item=" + itemId : "")
+                + (type == Type.PENALTY_ADDED || type == Type.PENALTY_PAID ? " amount=" + amount : "")
+                + (reason != null ? " reason=" + reason : "");
+    }
+}
@@ -0,0 +1,253 @@
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class publishes LibraryEvents to Flow subscribers without ever blocking the command thread.
+ * Every subscription owns a ring of preallocated events that the command thread fills in place,
+ * and delivery happens on the given executor in batches, limited by the demand the subscriber requested.
+ *
+ * When a subscriber falls behind and its ring is full, its overflow policy decides what happens:
+ * - DROP: the event is dropped for this subscriber and counted
+ * - BUFFER: the event is copied into an unbounded overflow queue and delivered later in order
+ */
+public class LibraryEventPublisher implements Flow.Publisher<LibraryEvent>, AutoCloseable {
+
+    /*
+    What to do with events for a subscriber whose ring is full.
+     */
+    public enum OverflowPolicy {
+        DROP, BUFFER
+    }
+
+    private final Executor executor;
+    private final int ringCapacity;
+    private final int batchSize;
+    private final List<RingSubscription> subscriptions = new CopyOnWriteArrayList<>();
+    private long sequence;
+    private volatile boolean closed;
+
+    /**
+     * Creates a publisher.
+     *
+     * @param executor Executor that runs the deliveries to subscribers
+     * @param ringCapacity Number of preallocated events per subscriber, rounded up to a power of two
+     * @param batchSize Maximum number of events delivered in one executor task
+     */
+
+    public LibraryEventPublisher(Executor executor, int ringCapacity, int batchSize) {
+        this.executor = executor;
+        this.ringCapacity = Integer.highestOneBit(Math.max(2, ringCapacity - 1)) << 1;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super LibraryEvent> subscriber) {
+        subscribe(subscriber, OverflowPolicy.DROP);
+    }
+
+    /*
+    Subscribes with an explicit overflow policy.
+     */
+
+    public void subscribe(Flow.Subscriber<? super LibraryEvent> subscriber, OverflowPolicy policy) {
+        RingSubscription subscription = new RingSubscription(subscriber, policy);
+        subscriptions.add(subscription);
+        subscriber.onSubscribe(subscription);
+        if (closed) {
+            subscription.signal();
+        }
+    }
+
+    /*
+    Publishes one event to every subscriber. Only called from the command thread.
+     */
+
+    public void publish(LibraryEvent.Type type, String userId, String itemId, double amount, LibraryEvent.Reason reason) {
+        long eventSequence = ++sequence;
+        for (RingSubscription subscription : subscriptions) {
+            subscription.offer(eventSequence, type, userId, itemId, amount, reason);
+        }
+    }
+
+    /*
+    Returns the number of events dropped for all subscribers so far.
+     */
+
+    public long getDroppedCount() {
+        long dropped = 0;
+        for (RingSubscription subscription : subscriptions) {
+            dropped += subscription.dropped.get();
+        }
+        return dropped;
+    }
+
+    /*
+    Completes every subscriber once the events published so far are delivered.
+     */
+
+    @Override
+    public void close() {
+        closed = true;
+        for (RingSubscription subscription : subscriptions) {
+            subscription.signal();
+        }
+    }
+
+    /*
+    Single producer / single consumer ring of events for one subscriber.
+    The command thread is the only producer, and the scheduled flag makes sure only one delivery task runs at a time.
+     */
+
+    private class RingSubscription implements Flow.Subscription, Runnable {
+        private final Flow.Subscriber<? super LibraryEvent> subscriber;
+        private final OverflowPolicy policy;
+        private final LibraryEvent[] ring;
+        private final int mask;
+        private final ArrayDeque<LibraryEvent> overflow = new ArrayDeque<>();
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicLong dropped = new AtomicLong();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile long head;
+        private volatile long tail;
+        private volatile boolean overflowing;
+        private volatile boolean cancelled;
+        // An error to deliver from run, so it is never signalled at the same time as onNext
+        private volatile Throwable error;
+        // Set once onComplete or onError was delivered, nothing is signalled after it
+        private volatile boolean terminated;
+
+        RingSubscription(Flow.Subscriber<? super LibraryEvent> subscriber, OverflowPolicy policy) {
+            this.subscriber = subscriber;
+            this.policy = policy;
+            this.ring = new LibraryEvent[ringCapacity];
+            for (int i = 0; i < ringCapacity; i++) {
+                ring[i] = new LibraryEvent();
+            }
+            this.mask = ringCapacity - 1;
+        }
+
+        void offer(long eventSequence, LibraryEvent.Type type, String userId, String itemId, double amount, LibraryEvent.Reason reason) {
+            if (cancelled) {
+                return;
+            }
+            long currentTail = tail;
+            if (!overflowing && currentTail - head < ring.length) {
+                ring[(int) (currentTail & mask)].set(eventSequence, type, userId, itemId, amount, reason);
+                tail = currentTail + 1;
+            } else if (policy == OverflowPolicy.DROP) {
+                dropped.incrementAndGet();
+                return;
+            } else {
+                LibraryEvent copy = new LibraryEvent();
+                copy.set(eventSequence, type, userId, itemId, amount, reason);
+                synchronized (overflow) {
+                    overflow.add(copy);
+                    overflowing = true;
+                }
+            }
+            if (demand.get() > 0) {
+                signal();
+            }
+        }
+
+        void signal() {
+            if (scheduled.compareAndSet(false, true)) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                if (!cancelled) {
+                    error = new IllegalArgumentException("Requested a non-positive number of events: " + n);
+                    cancelled = true;
+                    subscriptions.remove(this);
+                    signal();
+                }
+                return;
+            }
+            demand.accumulateAndGet(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            signal();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            subscriptions.remove(this);
+        }
+
+        /*
+        Delivers at most one batch of events, then gives the executor back to other subscriptions.
+        A pending error is delivered instead, unless the subscriber already got a terminal signal.
+         */
+
+        @Override
+        public void run() {
+            try {
+                if (error != null) {
+                    if (!terminated) {
+                        terminated = true;
+                        subscriber.onError(error);
+                    }
+                    return;
+                }
+                int delivered = 0;
+                while (!cancelled && delivered < batchSize && demand.get() > 0) {
+                    long currentHead = head;
+                    if (currentHead < tail) {
+                        subscriber.onNext(ring[(int) (currentHead & mask)]);
+                        head = currentHead + 1;
+                    } else {
+                        LibraryEvent event;
+                        synchronized (overflow) {
+                            event = overflow.poll();
+                            if (event == null) {
+                                overflowing = false;
+                            }
+                        }
+                        if (event == null) {
+                            break;
+                        }
+                        subscriber.onNext(event);
+                    }
+                    demand.decrementAndGet();
+                    delivered++;
+                }
+                if (!cancelled && closed && isEmpty()) {
+                    cancelled = true;
+                    terminated = true;
+                    subscriptions.remove(this);
+                    subscriber.onComplete();
+                }
+            } catch (Throwable t) {
+                cancelled = true;
+                subscriptions.remove(this);
+                if (!terminated) {
+                    terminated = true;
+                    subscriber.onError(t);
+                }
+            } finally {
+                scheduled.set(false);
+                // Events, a close or an error may have arrived after the last check, in which case another round is needed
+                if (error != null ? !terminated : !cancelled && (isEmpty() ? closed : demand.get() > 0)) {
+                    signal();
+                }
+            }
+        }
+
+        private boolean isEmpty() {
+            if (head < tail) {
+                return false;
+            }
+            synchronized (overflow) {
+                return overflow.isEmpty();
+            }
+        }
+    }
+}
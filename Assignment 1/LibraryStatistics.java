@@ -0,0 +1,77 @@
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class is an event subscriber that counts the library events by type and rejection reason.
+ * It requests events in batches, so it also shows how backpressure is used with LibraryEventPublisher.
+ */
+public class LibraryStatistics implements Flow.Subscriber<LibraryEvent> {
+    private static final int REQUEST_BATCH = 256;
+
+    private final long[] typeCounts = new long[LibraryEvent.Type.values().length];
+    private final long[] reasonCounts = new long[LibraryEvent.Reason.values().length];
+    private final CountDownLatch completed = new CountDownLatch(1);
+    private Flow.Subscription subscription;
+    private int receivedInBatch;
+    private double penaltiesAdded;
+    private double penaltiesPaid;
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        subscription.request(REQUEST_BATCH);
+    }
+
+    @Override
+    public void onNext(LibraryEvent event) {
+        typeCounts[event.getType().ordinal()]++;
+        if (event.getReason() != null) {
+            reasonCounts[event.getReason().ordinal()]++;
+        }
+        if (event.getType() == LibraryEvent.Type.PENALTY_ADDED) {
+            penaltiesAdded += event.getAmount();
+        } else if (event.getType() == LibraryEvent.Type.PENALTY_PAID) {
+            penaltiesPaid += event.getAmount();
+        }
+        if (++receivedInBatch == REQUEST_BATCH) {
+            receivedInBatch = 0;
+            subscription.request(REQUEST_BATCH);
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        System.err.println("Statistics stopped: " + throwable.getMessage());
+        completed.countDown();
+    }
+
+    @Override
+    public void onComplete() {
+        completed.countDown();
+    }
+
+    /*
+    Waits until the publisher has delivered all events, returns false on timeout.
+     */
+
+    public boolean awaitCompletion(long timeout, TimeUnit unit) throws InterruptedException {
+        return completed.await(timeout, unit);
+    }
+
+    /*
+    Returns a short summary of the counted events.
+     */
+
+    public String summary() {
+        StringBuilder summary = new StringBuilder("------ Library Statistics ------\n");
+        for (LibraryEvent.Type type : LibraryEvent.Type.values()) {
+            summary.append(type).append(": ").append(typeCounts[type.ordinal()]).append('\n');
+        }
+        for (LibraryEvent.Reason reason : LibraryEvent.Reason.values()) {
+            summary.append("  rejected ").append(reason).append(": ").append(reasonCounts[reason.ordinal()]).append('\n');
+        }
+        summary.append("Penalties added: ").append(penaltiesAdded).append("$ paid: ").append(penaltiesPaid).append("$\n");
+        return summary.toString();
+    }
+}
@@ -1,5 +1,7 @@
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This is the main class which is the entry point for the library system application
@@ -17,6 +19,11 @@ public class Main {
      *             [1] - Path of users' data file
      *             [2] - Path of commands' file
      *             [3] - Path of output file
+     *             Optional settings after them:
+     *             --checkpoint=file - Makes the run resumable, checkpoints are written to this file
+     *             --checkpoint-interval=n - Number of commands between checkpoints (default 100000)
+     *             --stats - Prints statistics of the library events to the console after the run
+     *             --offheap[=n] - Keeps the items in an off-heap store sized for n items (default 1048576)
      */
     public static void main(String[] args) {
         // Read file paths from command line
@@ -24,7 +31,86 @@ public class Main {
         String usersFile = args[1];
         String commandsFile = args[2];
         String outputFile = args[3];
+        String checkpointFile = null;
+        int checkpointInterval = 100000;
+        boolean printStatistics = false;
+        int offHeapCapacity = 0;
+        for (int i = 4; i < args.length; i++) {
+            if (args[i].startsWith("--checkpoint=")) {
+                checkpointFile = args[i].substring("--checkpoint=".length());
+            } else if (args[i].startsWith("--checkpoint-interval=")) {
+                checkpointInterval = Integer.parseInt(args[i].substring("--checkpoint-interval=".length()));
+            } else if (args[i].equals("--stats")) {
+                printStatistics = true;
+            } else if (args[i].equals("--offheap")) {
+                offHeapCapacity = 1 << 20;
+            } else if (args[i].startsWith("--offheap=")) {
+                offHeapCapacity = Integer.parseInt(args[i].substring("--offheap=".length()));
+            }
+        }
+
+        // Library events are only published when someone listens to them
+        LibraryEventPublisher events = null;
+        LibraryStatistics statistics = null;
+        if (printStatistics) {
+            events = new LibraryEventPublisher(Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "library-events");
+                thread.setDaemon(true);
+                return thread;
+            }), 4096, 256);
+            statistics = new LibraryStatistics();
+            events.subscribe(statistics, LibraryEventPublisher.OverflowPolicy.BUFFER);
+        }
+
+        if (checkpointFile != null) {
+            runCheckpointed(itemsFile, usersFile, commandsFile, outputFile, new Checkpointer(new File(checkpointFile), checkpointInterval),
+                    events, offHeapCapacity);
+        } else {
+            run(itemsFile, usersFile, commandsFile, outputFile, events, offHeapCapacity);
+        }
+
+        if (events != null) {
+            events.close();
+            try {
+                if (statistics.awaitCompletion(1, TimeUnit.MINUTES)) {
+                    System.out.print(statistics.summary());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /*
+    Creates the processor and loads the items and users into it.
+    With a positive off-heap capacity the items are read straight into an OffHeapItemStore.
+     */
+
+    private static CommandProcessor loadProcessor(String itemsFile, String usersFile, int offHeapCapacity) throws IOException {
+        CommandProcessor processor;
+        if (offHeapCapacity > 0) {
+            OffHeapItemStore store = new OffHeapItemStore(offHeapCapacity);
+            ReadItems.readItemsFromFile(itemsFile, store);
+            processor = new CommandProcessor(store);
+        } else {
+            processor = new CommandProcessor();
+            for (Item item : ReadItems.readItemsFromFile(itemsFile)) {
+                processor.addItem(item);
+            }
+        }
+        List<User> users = ReadUsers.readUsersFromFile(usersFile);
+        for (User user : users) {
+            processor.addUser(user);
+        }
+        return processor;
+    }
+
+    /*
+    Runs all commands in one go, writing the output from scratch.
+     */
 
+    private static void run(String itemsFile, String usersFile, String commandsFile, String outputFile, LibraryEventPublisher events,
+                            int offHeapCapacity) {
         // Redirect System.out to capture all output
         try (PrintStream fileOut = new PrintStream(new FileOutputStream(outputFile))) {
             // Save the original System.out
@@ -34,16 +120,8 @@ public class Main {
             System.setOut(fileOut);
 
             // Load data and process commands
-            List<Item> items = ReadItems.readItemsFromFile(itemsFile);
-            List<User> users = ReadUsers.readUsersFromFile(usersFile);
-
-            CommandProcessor processor = new CommandProcessor();
-            for (Item item : items) {
-                processor.addItem(item);
-            }
-            for (User user : users) {
-                processor.addUser(user);
-            }
+            CommandProcessor processor = loadProcessor(itemsFile, usersFile, offHeapCapacity);
+            processor.setEventPublisher(events);
 
             processor.processCommands(commandsFile);
 
@@ -55,4 +133,41 @@ public class Main {
             e.printStackTrace();
         }
     }
+
+    /*
+    Runs the commands with checkpoints, resuming from the last checkpoint if an earlier run was interrupted.
+    The output file is only touched after loading, since a resumed run needs it as it was left.
+     */
+
+    private static void runCheckpointed(String itemsFile, String usersFile, String commandsFile, String outputFile, Checkpointer checkpointer,
+                                        LibraryEventPublisher events, int offHeapCapacity) {
+        PrintStream originalOut = System.out;
+        try {
+            // Messages printed while loading belong at the start of the output
+            ByteArrayOutputStream loadMessages = new ByteArrayOutputStream();
+            System.setOut(new PrintStream(loadMessages));
+            CommandProcessor processor = loadProcessor(itemsFile, usersFile, offHeapCapacity);
+            System.setOut(originalOut);
+            processor.setEventPublisher(events);
+
+            long startOffset = checkpointer.restore(processor, new File(outputFile));
+
+            // The output was truncated to the checkpoint, new output is appended to it
+            try (FileOutputStream fileStream = new FileOutputStream(outputFile, true);
+                 PrintStream fileOut = new PrintStream(fileStream)) {
+                System.setOut(fileOut);
+                checkpointer.setOutput(fileStream);
+                if (startOffset == 0) {
+                    loadMessages.writeTo(fileOut);
+                }
+
+                processor.processCommands(commandsFile, checkpointer, startOffset);
+            }
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            System.setOut(originalOut);
+        }
+    }
 }
\ No newline at end of file
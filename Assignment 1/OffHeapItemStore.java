@@ -0,0 +1,460 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * This class keeps items outside of the Java heap, for catalogs too large to hold as Book/DVD/Magazine objects.
+ * Every item is a row in fixed width columns kept in direct ByteBuffers:
+ * - id (long), kind (B/D/M), type code and availability flag
+ * - addresses of title, creator (author/director/publisher), category, runtime, borrow date and borrower
+ * The strings themselves live in an append-only arena of direct buffers, stored as a 2 byte length and UTF-8 bytes.
+ * Borrow dates and borrower names repeat a lot, so they are interned instead of appended on every borrow.
+ *
+ * Items are looked up through an open addressing index from id to row, and get() returns an OffHeapItem,
+ * a small view object that reads and writes the columns of its row.
+ * Item IDs must be plain non-negative numbers below 10^17 without leading zeros.
+ * The off-heap memory is limited by -XX:MaxDirectMemorySize.
+ */
+public class OffHeapItemStore implements ItemStore {
+    private static final int ARENA_CHUNK_BITS = 26;
+    private static final int ARENA_CHUNK_SIZE = 1 << ARENA_CHUNK_BITS;
+    private static final int ADDRESS_COLUMNS = 6;
+
+    // Columns of the string addresses
+    static final int TITLE = 0;
+    static final int CREATOR = 1;
+    static final int CATEGORY = 2;
+    static final int RUNTIME = 3;
+    static final int BORROW_DATE = 4;
+    static final int BORROWED_BY = 5;
+
+    private static final byte FLAG_BORROWED = 1;
+    private static final long NO_STRING = -1;
+
+    private int capacity;
+    private int rows;
+    private ByteBuffer ids;
+    private ByteBuffer kinds;
+    private ByteBuffer typeCodes;
+    private ByteBuffer flags;
+    private final ByteBuffer[] addresses = new ByteBuffer[ADDRESS_COLUMNS];
+    private ByteBuffer index;
+    private int indexMask;
+
+    private final List<ByteBuffer> arena = new ArrayList<>();
+    private ByteBuffer arenaChunk;
+    private final List<String> typeNames = new ArrayList<>();
+    private final Map<String, Long> internedStrings = new HashMap<>();
+
+    /**
+     * Creates an empty store, the columns grow when more items are added.
+     *
+     * @param initialCapacity Expected number of items
+     */
+
+    public OffHeapItemStore(int initialCapacity) {
+        allocateColumns(Math.max(16, initialCapacity));
+        newArenaChunk();
+    }
+
+    /*
+    Adds an item object by copying its values into a new row.
+     */
+
+    @Override
+    public void add(Item item) {
+        if (item instanceof Book) {
+            Book book = (Book) item;
+            add('B', book.getId(), book.getTitle(), book.getAuthor(), book.getCategory(), null, book.getType());
+        } else if (item instanceof DVD) {
+            DVD dvd = (DVD) item;
+            add('D', dvd.getId(), dvd.getTitle(), dvd.getDirector(), dvd.getCategory(), dvd.getRuntime(), dvd.getType());
+        } else if (item instanceof Magazine) {
+            Magazine magazine = (Magazine) item;
+            add('M', magazine.getId(), magazine.getTitle(), magazine.getPublisher(), magazine.getCategory(), null, magazine.getType());
+        } else {
+            throw new IllegalArgumentException("Unsupported item class: " + item.getClass().getSimpleName());
+        }
+        if (!item.isAvailable()) {
+            get(item.getId()).borrow(item.getBorrowDate(), item.getBorrowedBy());
+        }
+    }
+
+    /**
+     * Adds an item from its raw values, without creating an Item object.
+     *
+     * @param kind 'B' for books, 'D' for DVDs, 'M' for magazines
+     * @param id Item's ID
+     * @param title Item's title
+     * @param creator Author, director or publisher
+     * @param category Item's category
+     * @param runtime Runtime of a DVD, null for the other kinds
+     * @param type Item's rarity type
+     */
+    public void add(char kind, String id, String title, String creator, String category, String runtime, String type) {
+        long numericId = parseId(id);
+        int row = find(numericId);
+        if (row < 0) {
+            if (rows == capacity) {
+                allocateColumns(capacity * 2);
+            }
+            row = rows++;
+            ids.putLong(row * 8, numericId);
+            insertIntoIndex(numericId, row);
+        }
+        kinds.put(row, (byte) kind);
+        typeCodes.put(row, typeCode(type));
+        flags.put(row, (byte) 0);
+        setAddress(row, TITLE, append(title));
+        setAddress(row, CREATOR, append(creator));
+        setAddress(row, CATEGORY, append(category));
+        setAddress(row, RUNTIME, runtime == null ? NO_STRING : append(runtime));
+        setAddress(row, BORROW_DATE, NO_STRING);
+        setAddress(row, BORROWED_BY, NO_STRING);
+    }
+
+    @Override
+    public Item get(String id) {
+        long numericId;
+        try {
+            numericId = parseId(id);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        int row = find(numericId);
+        return row < 0 ? null : new OffHeapItem(this, row);
+    }
+
+    @Override
+    public int size() {
+        return rows;
+    }
+
+    @Override
+    public Iterable<Item> all() {
+        return () -> new Iterator<Item>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < rows;
+            }
+
+            @Override
+            public Item next() {
+                if (next >= rows) {
+                    throw new NoSuchElementException();
+                }
+                return new OffHeapItem(OffHeapItemStore.this, next++);
+            }
+        };
+    }
+
+    /*
+    Sorts the rows by their ID as text with a primitive sort over keys that keep the text order.
+     */
+
+    @Override
+    public void forEachSortedById(Consumer<Item> action) {
+        long[] keys = new long[rows];
+        for (int row = 0; row < rows; row++) {
+            keys[row] = textOrderKey(ids.getLong(row * 8));
+        }
+        Arrays.parallelSort(keys);
+        for (long key : keys) {
+            action.accept(new OffHeapItem(this, find(idFromTextOrderKey(key))));
+        }
+    }
+
+    // Column accessors used by OffHeapItem
+    long id(int row) {
+        return ids.getLong(row * 8);
+    }
+    char kind(int row) {
+        return (char) kinds.get(row);
+    }
+    String type(int row) {
+        return typeNames.get(typeCodes.get(row));
+    }
+    boolean isAvailable(int row) {
+        return (flags.get(row) & FLAG_BORROWED) == 0;
+    }
+    String string(int row, int column) {
+        long address = addresses[column].getLong(row * 8);
+        if (address == NO_STRING) {
+            return null;
+        }
+        ByteBuffer chunk = arena.get((int) (address >>> ARENA_CHUNK_BITS));
+        int offset = (int) (address & (ARENA_CHUNK_SIZE - 1));
+        int length = chunk.getShort(offset) & 0xFFFF;
+        byte[] bytes = new byte[length];
+        chunk.get(offset + 2, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    void borrow(int row, String borrowDate, String borrowedBy) {
+        flags.put(row, FLAG_BORROWED);
+        setAddress(row, BORROW_DATE, intern(borrowDate));
+        setAddress(row, BORROWED_BY, intern(borrowedBy));
+    }
+    void returnItem(int row) {
+        flags.put(row, (byte) 0);
+        setAddress(row, BORROW_DATE, NO_STRING);
+        setAddress(row, BORROWED_BY, NO_STRING);
+    }
+
+    private void setAddress(int row, int column, long address) {
+        addresses[column].putLong(row * 8, address);
+    }
+
+    /*
+    Parses an ID, only canonical numbers can be kept in the id column.
+     */
+
+    private static long parseId(String id) {
+        long value = 0;
+        int length = id.length();
+        if (length == 0 || length > 17 || (length > 1 && id.charAt(0) == '0')) {
+            throw new IllegalArgumentException("Item ID is not supported by the off-heap store: " + id);
+        }
+        for (int i = 0; i < length; i++) {
+            char c = id.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new IllegalArgumentException("Item ID is not supported by the off-heap store: " + id);
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /*
+    Maps an ID to a key whose numeric order equals the text order of the ID:
+    the digits are left aligned to 17 places and the digit count breaks ties ("1" before "10").
+     */
+
+    private static long textOrderKey(long id) {
+        int digits = digitCount(id);
+        long aligned = id;
+        for (int i = digits; i < 17; i++) {
+            aligned *= 10;
+        }
+        return aligned * 20 + digits;
+    }
+
+    private static long idFromTextOrderKey(long key) {
+        int digits = (int) (key % 20);
+        long id = key / 20;
+        for (int i = digits; i < 17; i++) {
+            id /= 10;
+        }
+        return id;
+    }
+
+    private static int digitCount(long value) {
+        int digits = 1;
+        while (value >= 10) {
+            value /= 10;
+            digits++;
+        }
+        return digits;
+    }
+
+    private byte typeCode(String type) {
+        int code = typeNames.indexOf(type);
+        if (code < 0) {
+            if (typeNames.size() == Byte.MAX_VALUE) {
+                throw new IllegalArgumentException("Too many item types: " + type);
+            }
+            typeNames.add(type);
+            code = typeNames.size() - 1;
+        }
+        return (byte) code;
+    }
+
+    /*
+    Appends a string to the arena and returns its address.
+     */
+
+    private long append(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("String is too long for the off-heap store");
+        }
+        if (arenaChunk.remaining() < bytes.length + 2) {
+            newArenaChunk();
+        }
+        long address = ((long) (arena.size() - 1) << ARENA_CHUNK_BITS) | arenaChunk.position();
+        arenaChunk.putShort((short) bytes.length);
+        arenaChunk.put(bytes);
+        return address;
+    }
+
+    private long intern(String value) {
+        if (value == null) {
+            return NO_STRING;
+        }
+        Long address = internedStrings.get(value);
+        if (address == null) {
+            address = append(value);
+            internedStrings.put(value, address);
+        }
+        return address;
+    }
+
+    private void newArenaChunk() {
+        arenaChunk = ByteBuffer.allocateDirect(ARENA_CHUNK_SIZE).order(ByteOrder.nativeOrder());
+        arena.add(arenaChunk);
+    }
+
+    /*
+    Allocates the columns with a new capacity, copies the existing rows and rebuilds the index.
+     */
+
+    private void allocateColumns(int newCapacity) {
+        ByteBuffer newIds = copyInto(ids, newCapacity * 8L);
+        ByteBuffer newKinds = copyInto(kinds, newCapacity);
+        ByteBuffer newTypeCodes = copyInto(typeCodes, newCapacity);
+        ByteBuffer newFlags = copyInto(flags, newCapacity);
+        ids = newIds;
+        kinds = newKinds;
+        typeCodes = newTypeCodes;
+        flags = newFlags;
+        for (int column = 0; column < ADDRESS_COLUMNS; column++) {
+            addresses[column] = copyInto(addresses[column], newCapacity * 8L);
+        }
+        capacity = newCapacity;
+
+        // The index is kept at most half full
+        int indexSize = Integer.highestOneBit(newCapacity) << 2;
+        index = ByteBuffer.allocateDirect(indexSize * 4).order(ByteOrder.nativeOrder());
+        indexMask = indexSize - 1;
+        for (int row = 0; row < rows; row++) {
+            insertIntoIndex(ids.getLong(row * 8), row);
+        }
+    }
+
+    private static ByteBuffer copyInto(ByteBuffer old, long size) {
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Off-heap column is too large");
+        }
+        ByteBuffer column = ByteBuffer.allocateDirect((int) size).order(ByteOrder.nativeOrder());
+        if (old != null) {
+            ByteBuffer source = old.duplicate();
+            source.clear();
+            column.put(source);
+            column.clear();
+        }
+        return column;
+    }
+
+    /*
+    Index slots hold row + 1, zero marks an empty slot. Collisions are resolved by linear probing.
+     */
+
+    private void insertIntoIndex(long id, int row) {
+        int slot = hash(id) & indexMask;
+        while (index.getInt(slot * 4) != 0) {
+            slot = (slot + 1) & indexMask;
+        }
+        index.putInt(slot * 4, row + 1);
+    }
+
+    private int find(long id) {
+        int slot = hash(id) & indexMask;
+        int entry;
+        while ((entry = index.getInt(slot * 4)) != 0) {
+            if (ids.getLong((entry - 1) * 8) == id) {
+                return entry - 1;
+            }
+            slot = (slot + 1) & indexMask;
+        }
+        return -1;
+    }
+
+    private static int hash(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
+
+/**
+ * Lightweight view of one row of an OffHeapItemStore.
+ * Views are created on lookup and hold no item data themselves, two views of the same row are equal.
+ */
+class OffHeapItem extends Item {
+    private final OffHeapItemStore store;
+    private final int row;
+
+    OffHeapItem(OffHeapItemStore store, int row) {
+        this.store = store;
+        this.row = row;
+    }
+
+    // Getter Methods reading the columns of the row
+    @Override
+    public String getTitle() {
+        return store.string(row, OffHeapItemStore.TITLE);
+    }
+    @Override
+    public String getId() {
+        return Long.toString(store.id(row));
+    }
+    @Override
+    public String getType() {
+        return store.type(row);
+    }
+    @Override
+    public String getCategory() {
+        return store.string(row, OffHeapItemStore.CATEGORY);
+    }
+    @Override
+    public boolean isAvailable() {
+        return store.isAvailable(row);
+    }
+    @Override
+    public String getBorrowDate() {
+        return store.string(row, OffHeapItemStore.BORROW_DATE);
+    }
+    @Override
+    public String getBorrowedBy() {
+        return store.string(row, OffHeapItemStore.BORROWED_BY);
+    }
+
+    // Borrowing and returning write to the row
+    @Override
+    public void borrow(String borrowDate, String borrowedBy) {
+        store.borrow(row, borrowDate, borrowedBy);
+    }
+    @Override
+    public void returnItem() {
+        store.returnItem(row);
+    }
+
+    @Override
+    public void displayItemDetails() {
+        String creator = store.string(row, OffHeapItemStore.CREATOR);
+        switch (store.kind(row)) {
+            case 'B':
+                Book.printDetails(getId(), getTitle(), isAvailable(), getBorrowDate(), getBorrowedBy(), creator, getCategory());
+                break;
+            case 'D':
+                DVD.printDetails(getId(), getTitle(), isAvailable(), getBorrowDate(), getBorrowedBy(), creator,
+                        store.string(row, OffHeapItemStore.RUNTIME));
+                break;
+            default:
+                Magazine.printDetails(getId(), getTitle(), isAvailable(), getBorrowDate(), getBorrowedBy(), creator, getCategory());
+                break;
+        }
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof OffHeapItem && ((OffHeapItem) other).store == store && ((OffHeapItem) other).row == row;
+    }
+
+    @Override
+    public int hashCode() {
+        return row;
+    }
+}
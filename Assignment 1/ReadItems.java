@@ -3,6 +3,7 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * This class is for reading item information from files provided and creates Item objects.
@@ -27,7 +28,26 @@ public class ReadItems {
      */
     public static List<Item> readItemsFromFile(String filePath) throws IOException {
         List<Item> items = new ArrayList<>();
+        readItems(filePath, items::add);
+        return items;
+    }
 
+    /**
+     * Reads item data from provided text file straight into an item store, without keeping a list of all items.
+     *
+     * @param filePath Path of the text file
+     * @param store Store the items are added to
+     * @throws IOException If an error occurs during the reading process
+     */
+    public static void readItemsFromFile(String filePath, ItemStore store) throws IOException {
+        readItems(filePath, store::add);
+    }
+
+    /*
+    Parses the file line by line and passes every created item on.
+     */
+
+    private static void readItems(String filePath, Consumer<Item> items) throws IOException {
         try (BufferedReader br = new BufferedReader(new FileReader(filePath))) {
             String line;
             while ((line = br.readLine()) != null) {
@@ -41,20 +61,20 @@ public class ReadItems {
                     case "B": // Book
                         String author = data[3].trim();
                         String category = data[4].trim();
-                        items.add(new Book(id, title, author, category, type));
+                        items.accept(new Book(id, title, author, category, type));
                         break;
 
                     case "D": // DVD
                         String director = data[3].trim();
                         String dvdCategory = data[4].trim();
                         String runtime = data[5].trim();
-                        items.add(new DVD(id, title, director, dvdCategory, runtime, type));
+                        items.accept(new DVD(id, title, director, dvdCategory, runtime, type));
                         break;
 
                     case "M": // Magazine
                         String publisher = data[3].trim();
                         String magazineCategory = data[4].trim();
-                        items.add(new Magazine(id, title, publisher, magazineCategory, type));
+                        items.accept(new Magazine(id, title, publisher, magazineCategory, type));
                         break;
 
                     default:
@@ -62,7 +82,5 @@ public class ReadItems {
                 }
             }
         }
-
-        return items;
     }
 }
\ No newline at end of file
@@ -0,0 +1,196 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class finds the most frequent keys of a stream with bounded memory (Space-Saving algorithm).
+ * At most capacity keys are tracked; when a new key arrives and all counters are taken, it replaces
+ * the key with the smallest count and inherits that count as its possible overestimation (error).
+ *
+ * Counters are kept in buckets of equal count, linked in ascending order (Stream-Summary),
+ * so every update and every replacement is O(1) and top(k) only walks k counters.
+ *
+ * @param <K> Type of the counted keys
+ */
+public class SpaceSaving<K> {
+    private final int capacity;
+    private final Map<K, Counter<K>> counters;
+    private Bucket<K> minBucket;
+    private Bucket<K> maxBucket;
+
+    /**
+     * Creates a summary tracking at most the given number of keys.
+     *
+     * @param capacity Number of counters, keys with a frequency above (stream length / capacity) are always found
+     */
+
+    public SpaceSaving(int capacity) {
+        this.capacity = capacity;
+        this.counters = new HashMap<>(capacity * 2);
+    }
+
+    /*
+    Counts one occurrence of the key.
+     */
+
+    public void add(K key) {
+        Counter<K> counter = counters.get(key);
+        if (counter != null) {
+            increment(counter);
+            return;
+        }
+        if (counters.size() < capacity) {
+            counter = new Counter<>(key);
+            counters.put(key, counter);
+            if (minBucket == null || minBucket.count != 1) {
+                Bucket<K> bucket = new Bucket<>(1);
+                bucket.next = minBucket;
+                if (minBucket != null) {
+                    minBucket.prev = bucket;
+                } else {
+                    maxBucket = bucket;
+                }
+                minBucket = bucket;
+            }
+            attach(counter, minBucket);
+            return;
+        }
+        // Replace a key with the smallest count
+        counter = minBucket.first;
+        counters.remove(counter.key);
+        counter.key = key;
+        counter.error = minBucket.count;
+        counters.put(key, counter);
+        increment(counter);
+    }
+
+    /**
+     * Returns the k keys with the highest counts, the highest first.
+     *
+     * @param k Number of keys to return, none for k <= 0
+     * @return Entries with key, count (an upper bound) and error (count - error is a lower bound)
+     */
+    public List<Entry<K>> top(int k) {
+        if (k <= 0) {
+            return new ArrayList<>();
+        }
+        List<Entry<K>> result = new ArrayList<>(Math.min(k, counters.size()));
+        for (Bucket<K> bucket = maxBucket; bucket != null && result.size() < k; bucket = bucket.prev) {
+            for (Counter<K> counter = bucket.first; counter != null && result.size() < k; counter = counter.next) {
+                result.add(new Entry<>(counter.key, bucket.count, counter.error));
+            }
+        }
+        return result;
+    }
+
+    /*
+    Moves the counter to the bucket with the next count, creating it if needed.
+     */
+
+    private void increment(Counter<K> counter) {
+        Bucket<K> bucket = counter.bucket;
+        long newCount = bucket.count + 1;
+        Bucket<K> target = bucket.next;
+        if (target == null || target.count != newCount) {
+            target = new Bucket<>(newCount);
+            target.prev = bucket;
+            target.next = bucket.next;
+            if (bucket.next != null) {
+                bucket.next.prev = target;
+            } else {
+                maxBucket = target;
+            }
+            bucket.next = target;
+        }
+        detach(counter);
+        attach(counter, target);
+    }
+
+    private void attach(Counter<K> counter, Bucket<K> bucket) {
+        counter.bucket = bucket;
+        counter.prev = null;
+        counter.next = bucket.first;
+        if (bucket.first != null) {
+            bucket.first.prev = counter;
+        }
+        bucket.first = counter;
+    }
+
+    /*
+    Removes the counter from its bucket and unlinks the bucket once it is empty.
+     */
+
+    private void detach(Counter<K> counter) {
+        Bucket<K> bucket = counter.bucket;
+        if (counter.prev != null) {
+            counter.prev.next = counter.next;
+        } else {
+            bucket.first = counter.next;
+        }
+        if (counter.next != null) {
+            counter.next.prev = counter.prev;
+        }
+        if (bucket.first == null) {
+            if (bucket.prev != null) {
+                bucket.prev.next = bucket.next;
+            } else {
+                minBucket = bucket.next;
+            }
+            if (bucket.next != null) {
+                bucket.next.prev = bucket.prev;
+            } else {
+                maxBucket = bucket.prev;
+            }
+        }
+    }
+
+    /*
+    A reported key with its count and the possible overestimation of that count.
+     */
+    public static class Entry<K> {
+        private final K key;
+        private final long count;
+        private final long error;
+
+        Entry(K key, long count, long error) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+
+        // Getter Methods
+        public K getKey() {
+            return key;
+        }
+        public long getCount() {
+            return count;
+        }
+        public long getError() {
+            return error;
+        }
+    }
+
+    private static class Counter<K> {
+        K key;
+        long error;
+        Bucket<K> bucket;
+        Counter<K> prev;
+        Counter<K> next;
+
+        Counter(K key) {
+            this.key = key;
+        }
+    }
+
+    private static class Bucket<K> {
+        final long count;
+        Bucket<K> prev;
+        Bucket<K> next;
+        Counter<K> first;
+
+        Bucket(long count) {
+            this.count = count;
+        }
+    }
+}
@@ -63,6 +63,12 @@ public abstract class User {
     public void returnItem(Item item) {
         borrowedItems.remove(item);
     }
+    // Restores the penalty and borrowed items saved in a checkpoint
+    public void restoreState(double penalty, List<Item> borrowedItems) {
+        this.penalty = penalty;
+        this.borrowedItems.clear();
+        this.borrowedItems.addAll(borrowedItems);
+    }
     public abstract int getMaxDaysAllowed();
     public abstract void displayUserDetails();
 }
@@ -0,0 +1,272 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * This class generates synthetic library workloads in the formats read by ReadItems, ReadUsers
+ * and CommandProcessor, so the system can be tested with production sized inputs.
+ * Lines are written as raw bytes through large buffers, which keeps it close to disk speed even for 100M+ lines.
+ *
+ * Usage: java WorkloadGenerator <outputDir> [items=1000000] [users=100000] [commands=10000000]
+ *                               [zipf=1.0] [mix=60:30:10] [delay=10] [return=0.35] [pay=0.05] [seed=1]
+ *
+ * - zipf: skew of item popularity
+ * - mix: student:academic:guest percentages
+ * - delay: mean number of days between borrow date and today, values above a user's limit produce penalties
+ * - return / pay: share of commands that are returns / penalty payments, the rest are borrows
+ */
+public class WorkloadGenerator {
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int MAX_DELAY_DAYS = 365;
+    private static final int OPEN_LOANS = 1 << 20;
+    private static final String[] ITEM_TYPES = {"normal", "normal", "normal", "normal", "normal", "normal", "normal", "reference", "rare", "limited"};
+
+    /**
+     * Writes items.txt, users.txt and commands.txt into the given directory.
+     *
+     * @param args Output directory followed by optional key=value settings
+     * @throws IOException If one of the files cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        File outputDir = new File(args[0]);
+        Map<String, String> options = new HashMap<>();
+        for (int i = 1; i < args.length; i++) {
+            String[] pair = args[i].split("=", 2);
+            options.put(pair[0], pair.length > 1 ? pair[1] : "");
+        }
+        int itemCount = Integer.parseInt(options.getOrDefault("items", "1000000"));
+        int userCount = Integer.parseInt(options.getOrDefault("users", "100000"));
+        long commandCount = Long.parseLong(options.getOrDefault("commands", "10000000"));
+        double exponent = Double.parseDouble(options.getOrDefault("zipf", "1.0"));
+        String mixOption = options.getOrDefault("mix", "60:30:10");
+        String[] mix = mixOption.split(":");
+        double meanDelay = Double.parseDouble(options.getOrDefault("delay", "10"));
+        double returnShare = Double.parseDouble(options.getOrDefault("return", "0.35"));
+        double payShare = Double.parseDouble(options.getOrDefault("pay", "0.05"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "1"));
+
+        // The mix is used as a modulus, so its parts must be non-negative with at least one of them positive
+        int students = mix.length == 3 ? parsePart(mix[0]) : -1;
+        int academics = mix.length == 3 ? parsePart(mix[1]) : -1;
+        int guests = mix.length == 3 ? parsePart(mix[2]) : -1;
+        if (students < 0 || academics < 0 || guests < 0 || (long) students + academics + guests <= 0
+                || (long) students + academics + guests > Integer.MAX_VALUE) {
+            System.out.println("Error: mix should be student:academic:guest with non-negative parts and a positive sum: " + mixOption);
+            return;
+        }
+
+        outputDir.mkdirs();
+        long start = System.nanoTime();
+        writeItems(new File(outputDir, "items.txt"), itemCount);
+        writeUsers(new File(outputDir, "users.txt"), userCount, students, academics, guests);
+        writeCommands(new File(outputDir, "commands.txt"), commandCount, itemCount, userCount,
+                new Zipf(itemCount, exponent, seed), new SplittableRandom(seed + 1), meanDelay, returnShare, payShare);
+        System.out.printf("Generated %d items, %d users and %d commands in %.1f s%n",
+                itemCount, userCount, commandCount, (System.nanoTime() - start) / 1e9);
+    }
+
+    // Parses a part of the mix, -1 if it is not a number
+    private static int parsePart(String part) {
+        try {
+            return Integer.parseInt(part.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /*
+    Writes the catalog, mixing books, DVDs and magazines.
+     */
+
+    private static void writeItems(File file, int count) throws IOException {
+        try (LineWriter out = new LineWriter(file)) {
+            for (int i = 0; i < count; i++) {
+                String type = ITEM_TYPES[i % ITEM_TYPES.length];
+                switch (i % 5) {
+                    case 0:
+                    case 1:
+                    case 2:
+                        out.text("B,").number(itemId(i)).text(",Book Title ").number(i).text(",Author ").number(i % 997)
+                                .text(",Fiction,").text(type).newLine();
+                        break;
+                    case 3:
+                        out.text("D,").number(itemId(i)).text(",DVD Title ").number(i).text(",Director ").number(i % 499)
+                                .text(",Drama,").number(90 + i % 60).text(" min,").text(type).newLine();
+                        break;
+                    default:
+                        out.text("M,").number(itemId(i)).text(",Magazine Title ").number(i).text(",Publisher ").number(i % 211)
+                                .text(",Science,").text(type).newLine();
+                        break;
+                }
+            }
+        }
+    }
+
+    /*
+    Writes the users, interleaving the user types by the requested percentages.
+     */
+
+    private static void writeUsers(File file, int count, int students, int academics, int guests) throws IOException {
+        int total = students + academics + guests;
+        try (LineWriter out = new LineWriter(file)) {
+            for (int i = 0; i < count; i++) {
+                int slot = i % total;
+                if (slot < students) {
+                    out.text("S,Student ").number(i).text(",").number(userId(i)).text(",555-0000,Computer Science,Engineering,")
+                            .number(1 + i % 4).newLine();
+                } else if (slot < students + academics) {
+                    out.text("A,Academic ").number(i).text(",").number(userId(i)).text(",555-0000,Physics,Science,Professor").newLine();
+                } else {
+                    out.text("G,Guest ").number(i).text(",").number(userId(i)).text(",555-0000,Writer").newLine();
+                }
+            }
+        }
+    }
+
+    /*
+    Writes borrow, return and pay commands. Open loans are kept in a fixed ring
+    so that returns refer to items that were actually borrowed. Only a borrow of an item
+    that is not on loan opens a loan, the library rejects borrows of items that are.
+     */
+
+    private static void writeCommands(File file, long count, int itemCount, int userCount, Zipf popularity,
+                                      SplittableRandom random, double meanDelay, double returnShare, double payShare) throws IOException {
+        byte[][] dates = new byte[MAX_DELAY_DAYS + 1][];
+        LocalDate today = LocalDate.now();
+        DateTimeFormatter format = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+        for (int delay = 0; delay <= MAX_DELAY_DAYS; delay++) {
+            dates[delay] = today.minusDays(delay).format(format).getBytes(StandardCharsets.US_ASCII);
+        }
+
+        int[] loanUsers = new int[OPEN_LOANS];
+        int[] loanItems = new int[OPEN_LOANS];
+        int loanHead = 0;
+        int loanCount = 0;
+        BitSet onLoan = new BitSet(itemCount);
+
+        try (LineWriter out = new LineWriter(file)) {
+            for (long n = 0; n < count; n++) {
+                double roll = random.nextDouble();
+                if (roll < payShare) {
+                    out.text("pay,").number(userId(random.nextInt(userCount))).newLine();
+                } else if (roll < payShare + returnShare && loanCount > 0) {
+                    int slot = loanHead;
+                    loanHead = (loanHead + 1) & (OPEN_LOANS - 1);
+                    loanCount--;
+                    onLoan.clear(loanItems[slot]);
+                    out.text("return,").number(userId(loanUsers[slot])).text(",").number(itemId(loanItems[slot])).newLine();
+                } else {
+                    int user = random.nextInt(userCount);
+                    int item = popularity.next() - 1;
+                    // Exponential return delay, capped to one year
+                    int delay = (int) Math.min(MAX_DELAY_DAYS, -meanDelay * Math.log(1.0 - random.nextDouble()));
+                    out.text("borrow,").number(userId(user)).text(",").number(itemId(item)).text(",").bytes(dates[delay]).newLine();
+
+                    // An item that does not fit in the ring stays on loan, its return is never written
+                    if (!onLoan.get(item)) {
+                        onLoan.set(item);
+                        if (loanCount < OPEN_LOANS) {
+                            int slot = (loanHead + loanCount) & (OPEN_LOANS - 1);
+                            loanUsers[slot] = user;
+                            loanItems[slot] = item;
+                            loanCount++;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static long itemId(int index) {
+        return 1_000_000L + index;
+    }
+    private static long userId(int index) {
+        return 1_000_000L + index;
+    }
+
+    /*
+    Small buffered writer that formats text and numbers straight into a byte buffer.
+    Only ASCII text is written, so no charset encoding is needed.
+     */
+
+    private static class LineWriter implements Closeable {
+        private final OutputStream out;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private int position;
+
+        LineWriter(File file) throws IOException {
+            this.out = new FileOutputStream(file);
+        }
+
+        LineWriter text(String text) throws IOException {
+            int length = text.length();
+            if (position + length > buffer.length) {
+                flush();
+            }
+            for (int i = 0; i < length; i++) {
+                buffer[position++] = (byte) text.charAt(i);
+            }
+            return this;
+        }
+
+        LineWriter bytes(byte[] bytes) throws IOException {
+            if (position + bytes.length > buffer.length) {
+                flush();
+            }
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+            return this;
+        }
+
+        LineWriter number(long value) throws IOException {
+            if (position + 20 > buffer.length) {
+                flush();
+            }
+            if (value < 0) {
+                buffer[position++] = '-';
+                value = -value;
+            }
+            int end = position + digitCount(value);
+            int index = end;
+            do {
+                buffer[--index] = (byte) ('0' + value % 10);
+                value /= 10;
+            } while (value != 0);
+            position = end;
+            return this;
+        }
+
+        LineWriter newLine() throws IOException {
+            if (position == buffer.length) {
+                flush();
+            }
+            buffer[position++] = '\n';
+            return this;
+        }
+
+        private static int digitCount(long value) {
+            int digits = 1;
+            while (value >= 10) {
+                value /= 10;
+                digits++;
+            }
+            return digits;
+        }
+
+        private void flush() throws IOException {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+import java.util.SplittableRandom;
+
+/**
+ * This class draws ranks from a Zipf distribution, used to model item popularity
+ * Rank 1 is the most popular item, rank n the least popular one
+ * Uses rejection-inversion sampling, so it needs no lookup tables and works for very large catalogs
+ */
+public class Zipf {
+    private final int numberOfElements;
+    private final double exponent;
+    private final double hIntegralX1;
+    private final double hIntegralNumberOfElements;
+    private final double s;
+    private final SplittableRandom random;
+
+    /**
+     * Creates a new Zipf sampler.
+     *
+     * @param numberOfElements Number of ranks (catalog size)
+     * @param exponent Skew of the distribution, 1.0 is the classic Zipf law
+     * @param seed Seed for the random generator so runs are repeatable
+     */
+
+    public Zipf(int numberOfElements, double exponent, long seed) {
+        if (numberOfElements <= 0 || exponent <= 0) {
+            throw new IllegalArgumentException("Zipf needs a positive size and exponent");
+        }
+        this.numberOfElements = numberOfElements;
+        this.exponent = exponent;
+        this.hIntegralX1 = hIntegral(1.5) - 1.0;
+        this.hIntegralNumberOfElements = hIntegral(numberOfElements + 0.5);
+        this.s = 2.0 - hIntegralInverse(hIntegral(2.5) - h(2));
+        this.random = new SplittableRandom(seed);
+    }
+
+    /*
+    Returns the next rank between 1 and numberOfElements.
+     */
+
+    public int next() {
+        while (true) {
+            double u = hIntegralNumberOfElements + random.nextDouble() * (hIntegralX1 - hIntegralNumberOfElements);
+            double x = hIntegralInverse(u);
+            int k = (int) (x + 0.5);
+            if (k < 1) {
+                k = 1;
+            } else if (k > numberOfElements) {
+                k = numberOfElements;
+            }
+            if (k - x <= s || u >= hIntegral(k + 0.5) - h(k)) {
+                return k;
+            }
+        }
+    }
+
+    // Helper functions of the rejection-inversion method
+    private double hIntegral(double x) {
+        double logX = Math.log(x);
+        return helper2((1.0 - exponent) * logX) * logX;
+    }
+    private double h(double x) {
+        return Math.exp(-exponent * Math.log(x));
+    }
+    private double hIntegralInverse(double x) {
+        double t = x * (1.0 - exponent);
+        if (t < -1.0) {
+            t = -1.0;
+        }
+        return Math.exp(helper1(t) * x);
+    }
+    private static double helper1(double x) {
+        if (Math.abs(x) > 1e-8) {
+            return Math.log1p(x) / x;
+        }
+        return 1.0 - x * (0.5 - x * (1.0 / 3.0 - 0.25 * x));
+    }
+    private static double helper2(double x) {
+        if (Math.abs(x) > 1e-8) {
+            return Math.expm1(x) / x;
+        }
+        return 1.0 + x * 0.5 * (1.0 + x * (1.0 / 3.0) * (1.0 + 0.25 * x));
+    }
+}
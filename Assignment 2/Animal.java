@@ -1,129 +1,58 @@
 /**
  * This class represents the Animals that can be in our zoo
- * Used abstract class for methods to get animals' type, food type and lastly how much food they will need to get fed
- * Inherited all animals (Lion, Elephant, Penguin, Chimpanzee) from Animal base class
- * Overridden abstract methods for each animal separately
+ * Every animal belongs to a Species of the SpeciesTable, which gives its type, its food types
+ * and how much food it will need to get fed, so new species need no new classes
+ * An animal can have a location (x, y), the warehouses nearest to it are preferred when it is fed
  */
 
-public abstract class Animal {
+public class Animal {
+    private Species species;
     private String name;
     private int age;
+    private double x = Double.NaN;
+    private double y = Double.NaN;
 
-    public Animal(String name, int age){
+    public Animal(Species species, String name, int age){
+        this.species = species;
         this.name = name;
         this.age = age;
     }
-    public abstract String getFoodType();
 
-    public abstract String getType();
-
-    public abstract double eat();
-
-    public String getName() {
-        return name;
-    }
-
-    public int getAge() {
-        return age;
-    }
-}
-
-class Lion extends Animal {
-    Lion(String name, int age) {
-        super(name, age);
-    }
-
-    @Override
     public String getFoodType() {
-        return "Meat";
+        return species.getFoodTypeName();
     }
 
-    @Override
     public String getType() {
-        return "Lion";
+        return species.getName();
     }
 
-    @Override
     public double eat() {
-        int baseAge = 5;
-        double baseMealSize = 5.0;
-        double adjustmentPerAge = 0.05;
-
-        return baseMealSize + (getAge() - baseAge) * adjustmentPerAge;
+        return species.mealSize(age);
     }
-}
 
-class Elephant extends Animal {
-    Elephant(String name, int age) {
-        super(name, age);
+    public void setLocation(double x, double y) {
+        this.x = x;
+        this.y = y;
     }
 
-    @Override
-    public String getFoodType() {
-        return "Plant";
+    // The coordinates of the animal's location, NaN if it has none
+    public double getX() {
+        return x;
     }
 
-    @Override
-    public String getType() {
-        return "Elephant";
+    public double getY() {
+        return y;
     }
 
-    @Override
-    public double eat() {
-        int baseAge = 20;
-        double baseMealSize = 10.0;
-        double adjustmentPerAge = 0.015;
-
-        return baseMealSize + (getAge() - baseAge) * adjustmentPerAge;
+    public Species getSpecies() {
+        return species;
     }
-}
 
-class Penguin extends Animal {
-    Penguin(String name, int age) {
-        super(name, age);
-    }
-
-    @Override
-    public String getFoodType() {
-        return "Fish";
-    }
-
-    @Override
-    public String getType() {
-        return "Penguin";
-    }
-
-    @Override
-    public double eat() {
-        int baseAge = 4;
-        double baseMealSize = 3.0;
-        double adjustmentPerAge = 0.040;
-
-        return baseMealSize + (getAge() - baseAge) * adjustmentPerAge;
-    }
-}
-
-class Chimpanzee extends Animal {
-    Chimpanzee(String name, int age) {
-        super(name, age);
-    }
-
-    @Override
-    public String getFoodType() {
-        return "Meat and Plant";
-    }
-
-    @Override
-    public String getType() {
-        return "Chimpanzee";
+    public String getName() {
+        return name;
     }
 
-    @Override
-    public double eat() {
-        int baseAge = 10;
-        double baseMealSize = 6.0;
-        double adjustmentPerAge = 0.025;
-
-        return (baseMealSize + (getAge() - baseAge) * adjustmentPerAge)/2;
+    public int getAge() {
+        return age;
     }
 }
@@ -0,0 +1,133 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * This class keeps the animals of the zoo column by column (struct of arrays)
+ * Every animal is a row: its species code, its age and its meal size, which is computed once when the animal is added
+ * Batch feedings walk the primitive columns in a tight loop instead of calling eat() on every animal object
+ * Species get their registry codes in the order they are first seen, every code keeps the Species handler it stands for
+ */
+
+public class AnimalRegistry {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private Animal[] animals = new Animal[INITIAL_CAPACITY];
+    private byte[] speciesCodes = new byte[INITIAL_CAPACITY];
+    private int[] ages = new int[INITIAL_CAPACITY];
+    private double[] mealSizes = new double[INITIAL_CAPACITY];
+    private int size;
+
+    private final List<Species> species = new ArrayList<>();
+    private final HashMap<Species, Integer> codesBySpecies = new HashMap<>();
+
+    /*
+    Adds the animal as a new row and returns the row
+     */
+    public int add(Animal animal) {
+        if (size == animals.length) {
+            int capacity = size * 2;
+            animals = Arrays.copyOf(animals, capacity);
+            speciesCodes = Arrays.copyOf(speciesCodes, capacity);
+            ages = Arrays.copyOf(ages, capacity);
+            mealSizes = Arrays.copyOf(mealSizes, capacity);
+        }
+        int row = size++;
+        animals[row] = animal;
+        speciesCodes[row] = (byte) speciesCode(animal);
+        ages[row] = animal.getAge();
+        mealSizes[row] = animal.eat();
+        return row;
+    }
+
+    /*
+    Returns the code of the animal's species, registering the species the first time it is seen
+     */
+    private int speciesCode(Animal animal) {
+        Integer code = codesBySpecies.get(animal.getSpecies());
+        if (code != null) {
+            return code;
+        }
+        if (species.size() == Byte.MAX_VALUE) {
+            throw new IllegalStateException("Too many species, at most " + Byte.MAX_VALUE + " are supported");
+        }
+        species.add(animal.getSpecies());
+        codesBySpecies.put(animal.getSpecies(), species.size() - 1);
+        return species.size() - 1;
+    }
+
+    /*
+    Returns the code of the species with the given name ignoring case, or -1 if no animal of it was added
+     */
+    public int findSpecies(String name) {
+        for (int code = 0; code < species.size(); code++) {
+            if (species.get(code).getName().equalsIgnoreCase(name)) {
+                return code;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Sums the food each species needs to give every animal (of one species or of all) the given number of meals.
+     * Every animal's portion is rounded to grams like a single feeding, and portions are added up as whole grams
+     * so the total does not depend on the order of the animals.
+     *
+     * @param species    code of the species to feed, or -1 for all animals
+     * @param numOfMeals number of meals every animal gets
+     * @param grams      receives the grams needed per species code, must have room for every species
+     * @return number of animals fed
+     */
+    public int requiredGrams(int species, double numOfMeals, long[] grams) {
+        Arrays.fill(grams, 0L);
+        byte[] codes = speciesCodes;
+        double[] meals = mealSizes;
+        int fed = 0;
+        if (species < 0) {
+            for (int row = 0; row < size; row++) {
+                grams[codes[row]] += Math.round(meals[row] * numOfMeals * 1000.0);
+            }
+            fed = size;
+        } else {
+            long total = 0;
+            for (int row = 0; row < size; row++) {
+                if (codes[row] == species) {
+                    total += Math.round(meals[row] * numOfMeals * 1000.0);
+                    fed++;
+                }
+            }
+            grams[species] = total;
+        }
+        return fed;
+    }
+
+    // Getter Methods
+    public int size() {
+        return size;
+    }
+    public int getSpeciesCount() {
+        return species.size();
+    }
+    public Species getSpeciesHandler(int code) {
+        return species.get(code);
+    }
+    public String getSpeciesName(int code) {
+        return species.get(code).getName();
+    }
+    public FoodType[] getSpeciesFoods(int code) {
+        return species.get(code).getFoods();
+    }
+    public Animal getAnimal(int row) {
+        return animals[row];
+    }
+    public int getSpecies(int row) {
+        return speciesCodes[row];
+    }
+    public int getAge(int row) {
+        return ages[row];
+    }
+    public double getMealSize(int row) {
+        return mealSizes[row];
+    }
+}
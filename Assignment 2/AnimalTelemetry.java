@@ -0,0 +1,257 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongSupplier;
+
+/**
+ * This class collects sensor readings (body temperature, activity count) of the animals
+ * Every animal has a lock-free ring buffer of primitive arrays that any number of sensor threads can write to,
+ * the readings are moved out of the ring into per-second and per-minute buckets, which give min/max/mean
+ * over the last minute and the last hour without keeping every reading
+ * Recording a reading does not allocate, the buffers of an animal are created with its first reading
+ * Animals are identified by their AnimalRegistry rows, times are milliseconds
+ */
+
+public class AnimalTelemetry {
+    public static final int TEMPERATURE = 0;
+    public static final int ACTIVITY = 1;
+    private static final String[] METRIC_NAMES = {"Temperature", "Activity"};
+
+    private static final int RING_SIZE = 1 << 10;
+    private static final int BUCKETS = 60;
+    private static final long[] BUCKET_MILLIS = {1000L, 60_000L};
+    private static final String[] WINDOW_NAMES = {"1m", "1h"};
+
+    private final LongSupplier clock;
+    // Replaced when it grows, channels are only created while holding the lock that replaces it
+    private volatile AtomicReferenceArray<Channel> channels = new AtomicReferenceArray<>(64);
+    private final AtomicLong dropped = new AtomicLong();
+
+    public AnimalTelemetry(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    public AnimalTelemetry() {
+        this(System::currentTimeMillis);
+    }
+
+    /*
+    Makes room for the row of a new animal, readings of other animals can come in at the same time
+     */
+    public synchronized void addAnimal(int row) {
+        if (row >= channels.length()) {
+            AtomicReferenceArray<Channel> larger = new AtomicReferenceArray<>(Math.max(row + 1, channels.length() * 2));
+            for (int i = 0; i < channels.length(); i++) {
+                larger.set(i, channels.get(i));
+            }
+            channels = larger;
+        }
+    }
+
+    /**
+     * Records a reading of the animal, can be called from any number of threads at the same time.
+     *
+     * @param row    the animal's registry row
+     * @param metric TEMPERATURE or ACTIVITY
+     * @param time   time of the reading in milliseconds
+     * @param value  the reading, it has to be finite
+     * @return false if the animal's ring was full and the reading had to be dropped
+     * @throws IllegalArgumentException if the value is NaN or infinite
+     */
+    public boolean record(int row, int metric, long time, double value) {
+        if (!Double.isFinite(value)) {
+            throw new IllegalArgumentException("Reading is not a finite number: " + value);
+        }
+        if (channel(row).offer(metric, time, value)) {
+            return true;
+        }
+        dropped.incrementAndGet();
+        return false;
+    }
+
+    public long now() {
+        return clock.getAsLong();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Returns min, max, mean and count of the animal's readings in a window ending now.
+     *
+     * @param row    the animal's registry row
+     * @param metric TEMPERATURE or ACTIVITY
+     * @param window 0 for the last minute, 1 for the last hour
+     * @return {min, max, mean, count}, count is 0 if there were no readings
+     */
+    public double[] aggregate(int row, int metric, int window) {
+        return channel(row).aggregate(metric, window, clock.getAsLong());
+    }
+
+    /*
+    Finds the metric by its name ignoring case, -1 if there is none
+     */
+    public static int metric(String name) {
+        for (int metric = 0; metric < METRIC_NAMES.length; metric++) {
+            if (METRIC_NAMES[metric].equalsIgnoreCase(name)) {
+                return metric;
+            }
+        }
+        return -1;
+    }
+
+    public static String metricName(int metric) {
+        return METRIC_NAMES[metric];
+    }
+
+    public static int windowCount() {
+        return WINDOW_NAMES.length;
+    }
+
+    public static String windowName(int window) {
+        return WINDOW_NAMES[window];
+    }
+
+    private Channel channel(int row) {
+        Channel channel = channels.get(row);
+        return channel != null ? channel : createChannel(row);
+    }
+
+    /*
+    Creates the channel of an animal with its first reading. Holding the lock of addAnimal makes sure
+    the channel is not created in an array that is being copied into a larger one and then lost
+     */
+    private synchronized Channel createChannel(int row) {
+        Channel channel = channels.get(row);
+        if (channel == null) {
+            channel = new Channel();
+            channels.set(row, channel);
+        }
+        return channel;
+    }
+
+    /*
+    The ring and the buckets of one animal. Writers claim a slot by moving the claimed sequence forward with a CAS,
+    fill it and publish it by storing its sequence + 1. One thread at a time (whoever wins the draining flag)
+    moves published readings into the buckets, writers do this themselves when the ring gets half full
+     */
+    private static class Channel {
+        private final long[] times = new long[RING_SIZE];
+        private final double[] values = new double[RING_SIZE];
+        private final byte[] metrics = new byte[RING_SIZE];
+        private final AtomicLongArray published = new AtomicLongArray(RING_SIZE);
+        private final AtomicLong claimed = new AtomicLong();
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private volatile long consumed;
+
+        // Buckets of every metric and window, index ((metric * windows) + window) * BUCKETS + bucket
+        private final long[] epochs = new long[METRIC_NAMES.length * BUCKET_MILLIS.length * BUCKETS];
+        private final long[] counts = new long[epochs.length];
+        private final double[] sums = new double[epochs.length];
+        private final double[] mins = new double[epochs.length];
+        private final double[] maxs = new double[epochs.length];
+
+        Channel() {
+            Arrays.fill(epochs, Long.MIN_VALUE);
+        }
+
+        boolean offer(int metric, long time, double value) {
+            long sequence;
+            do {
+                sequence = claimed.get();
+                if (sequence - consumed >= RING_SIZE) {
+                    tryDrain();
+                    if (sequence - consumed >= RING_SIZE) {
+                        return false;
+                    }
+                }
+            } while (!claimed.compareAndSet(sequence, sequence + 1));
+
+            int slot = (int) sequence & (RING_SIZE - 1);
+            times[slot] = time;
+            values[slot] = value;
+            metrics[slot] = (byte) metric;
+            published.set(slot, sequence + 1);
+
+            if (sequence - consumed >= RING_SIZE / 2) {
+                tryDrain();
+            }
+            return true;
+        }
+
+        private void tryDrain() {
+            if (draining.compareAndSet(false, true)) {
+                try {
+                    drain();
+                } finally {
+                    draining.set(false);
+                }
+            }
+        }
+
+        // Only called by the thread holding the draining flag
+        private void drain() {
+            long next = consumed;
+            while (true) {
+                int slot = (int) next & (RING_SIZE - 1);
+                if (published.get(slot) != next + 1) {
+                    break;
+                }
+                add(metrics[slot], times[slot], values[slot]);
+                next++;
+                consumed = next;
+            }
+        }
+
+        private void add(int metric, long time, double value) {
+            for (int window = 0; window < BUCKET_MILLIS.length; window++) {
+                long epoch = Math.floorDiv(time, BUCKET_MILLIS[window]);
+                int index = (metric * BUCKET_MILLIS.length + window) * BUCKETS + (int) Math.floorMod(epoch, (long) BUCKETS);
+                if (epochs[index] != epoch) {
+                    if (epochs[index] > epoch) {
+                        // Older than anything the window still holds
+                        continue;
+                    }
+                    epochs[index] = epoch;
+                    counts[index] = 0;
+                    sums[index] = 0;
+                    mins[index] = Double.POSITIVE_INFINITY;
+                    maxs[index] = Double.NEGATIVE_INFINITY;
+                }
+                counts[index]++;
+                sums[index] += value;
+                mins[index] = Math.min(mins[index], value);
+                maxs[index] = Math.max(maxs[index], value);
+            }
+        }
+
+        double[] aggregate(int metric, int window, long now) {
+            while (!draining.compareAndSet(false, true)) {
+                Thread.onSpinWait();
+            }
+            try {
+                drain();
+                long current = Math.floorDiv(now, BUCKET_MILLIS[window]);
+                int base = (metric * BUCKET_MILLIS.length + window) * BUCKETS;
+                long count = 0;
+                double sum = 0;
+                double min = Double.POSITIVE_INFINITY;
+                double max = Double.NEGATIVE_INFINITY;
+                for (int index = base; index < base + BUCKETS; index++) {
+                    if (epochs[index] > current - BUCKETS && epochs[index] <= current) {
+                        count += counts[index];
+                        sum += sums[index];
+                        min = Math.min(min, mins[index]);
+                        max = Math.max(max, maxs[index]);
+                    }
+                }
+                return new double[]{min, max, count == 0 ? 0 : sum / count, count};
+            } finally {
+                draining.set(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,195 @@
+import java.util.Arrays;
+
+/**
+ * This class tracks when every habitat was last cleaned and which one is the most overdue
+ * Each animal has its own habitat, due for cleaning its Species' interval after its last cleaning
+ * Habitats are kept in an indexed min-heap ordered by due time, so the most overdue one is found in O(1)
+ * and a habitat is moved after a cleaning in O(log n)
+ * Time is counted in minutes on the scheduler's own clock, which only moves forward with scheduled days
+ */
+
+public class CleaningScheduler {
+    public static final long MINUTES_PER_DAY = 24 * 60;
+
+    private final IndexedMinHeap dueTimes = new IndexedMinHeap();
+    private long[] durations = new long[16];
+    private long[] intervals = new long[16];
+    private long now;
+
+    /*
+    Adds the habitat of a registry row, it is first due one interval after the start of the clock
+     */
+    public synchronized void addHabitat(int row, Species species) {
+        if (row >= intervals.length) {
+            int capacity = Math.max(row + 1, intervals.length * 2);
+            intervals = Arrays.copyOf(intervals, capacity);
+            durations = Arrays.copyOf(durations, capacity);
+        }
+        intervals[row] = species.getCleaningIntervalMinutes();
+        durations[row] = species.getCleaningMinutes();
+        dueTimes.set(row, intervals[row]);
+    }
+
+    /*
+    Records that the habitat was cleaned at the given time, it is next due one interval later
+     */
+    public synchronized void markCleaned(int row, long time) {
+        if (dueTimes.contains(row)) {
+            dueTimes.set(row, time + intervals[row]);
+        }
+    }
+
+    /*
+    Records that the habitat was cleaned now, reading the clock and moving the habitat under one lock
+    so a scheduled day cannot move the clock in between
+     */
+    public synchronized void markCleanedNow(int row) {
+        markCleaned(row, now);
+    }
+
+    /*
+    Returns the row of the most overdue habitat (the earliest due one), or -1 if there are no habitats
+     */
+    public synchronized int mostOverdue() {
+        return dueTimes.isEmpty() ? -1 : dueTimes.peek();
+    }
+
+    public synchronized long dueTime(int row) {
+        return dueTimes.key(row);
+    }
+
+    public synchronized long getDuration(int row) {
+        return durations[row];
+    }
+
+    public synchronized long now() {
+        return now;
+    }
+
+    /*
+    Moves the clock forward, it never goes back
+     */
+    public synchronized void advanceTo(long time) {
+        now = Math.max(now, time);
+    }
+
+    /*
+    Returns how many habitats are due at the given time
+     */
+    public synchronized int countDue(long time) {
+        return dueTimes.countAtMost(time);
+    }
+
+    /*
+    Formats a time of the clock as "day d hh:mm", days start at 1
+     */
+    public static String formatTime(long time) {
+        long minuteOfDay = Math.floorMod(time, MINUTES_PER_DAY);
+        return String.format("day %d %02d:%02d", Math.floorDiv(time, MINUTES_PER_DAY) + 1, minuteOfDay / 60, minuteOfDay % 60);
+    }
+}
+
+/**
+ * A binary min-heap of int items (0..n) with long keys, where every item knows its position in the heap
+ * so the key of any item can be changed in O(log n)
+ */
+class IndexedMinHeap {
+    private int[] heap = new int[16];
+    private int[] positions = new int[16];
+    private long[] keys = new long[16];
+    private int size;
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(int item) {
+        return item < positions.length && positions[item] > 0;
+    }
+
+    // Returns the item with the smallest key
+    public int peek() {
+        return heap[1];
+    }
+
+    public long key(int item) {
+        return keys[item];
+    }
+
+    /*
+    Adds the item with the key, or changes its key if it is already in the heap
+     */
+    public void set(int item, long key) {
+        if (!contains(item)) {
+            ensureCapacity(item);
+            size++;
+            heap[size] = item;
+            positions[item] = size;
+            keys[item] = key;
+            siftUp(size);
+            return;
+        }
+        long old = keys[item];
+        keys[item] = key;
+        if (key < old) {
+            siftUp(positions[item]);
+        } else {
+            siftDown(positions[item]);
+        }
+    }
+
+    /*
+    Counts the items with a key of at most the limit, only visiting those items and their children
+     */
+    public int countAtMost(long limit) {
+        return countAtMost(1, limit);
+    }
+
+    private int countAtMost(int position, long limit) {
+        if (position > size || keys[heap[position]] > limit) {
+            return 0;
+        }
+        return 1 + countAtMost(2 * position, limit) + countAtMost(2 * position + 1, limit);
+    }
+
+    private void siftUp(int position) {
+        int item = heap[position];
+        while (position > 1 && keys[heap[position / 2]] > keys[item]) {
+            move(heap[position / 2], position);
+            position /= 2;
+        }
+        move(item, position);
+    }
+
+    private void siftDown(int position) {
+        int item = heap[position];
+        while (2 * position <= size) {
+            int child = 2 * position;
+            if (child < size && keys[heap[child + 1]] < keys[heap[child]]) {
+                child++;
+            }
+            if (keys[heap[child]] >= keys[item]) {
+                break;
+            }
+            move(heap[child], position);
+            position = child;
+        }
+        move(item, position);
+    }
+
+    private void move(int item, int position) {
+        heap[position] = item;
+        positions[item] = position;
+    }
+
+    private void ensureCapacity(int item) {
+        if (size + 1 >= heap.length) {
+            heap = Arrays.copyOf(heap, heap.length * 2);
+        }
+        if (item >= positions.length) {
+            int capacity = Math.max(item + 1, positions.length * 2);
+            positions = Arrays.copyOf(positions, capacity);
+            keys = Arrays.copyOf(keys, capacity);
+        }
+    }
+}
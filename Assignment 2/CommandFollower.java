@@ -0,0 +1,100 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class follows a commands file that keeps being appended to, like tail -f
+ * Only the bytes after the last read offset are read (positional FileChannel reads), complete lines are run
+ * with a CommandReader and the output is flushed after every batch of new lines
+ * A WatchService on the file's directory wakes the follower up when the file changes, it also checks the file
+ * every POLL_MILLIS because some platforms deliver watch events late
+ */
+
+public class CommandFollower {
+    private static final long POLL_MILLIS = 50;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final CommandReader reader;
+    private final Path file;
+
+    public CommandFollower(CommandReader reader, Path file) {
+        this.reader = reader;
+        this.file = file;
+    }
+
+    /**
+     * Runs the lines already in the file and then every line appended to it.
+     * A line is only run once its line feed has been written, the unfinished last line is run when following stops.
+     * If the file gets shorter than what was read, it is taken as truncated and followed from its start.
+     *
+     * @param output     the Writer the output is streamed to, flushed after every batch of lines
+     * @param idleMillis stop after the file did not grow for this long, 0 to follow until the thread is interrupted
+     * @throws IOException if reading the file or writing the output fails
+     */
+    public void follow(Writer output, long idleMillis) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+             WatchService watcher = directory.getFileSystem().newWatchService()) {
+            directory.register(watcher, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_CREATE);
+
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int filled = 0;
+            long offset = 0;
+            long lastGrowth = System.nanoTime();
+            while (true) {
+                long size = channel.size();
+                if (size < offset) {
+                    offset = 0;
+                    filled = 0;
+                }
+                boolean grew = offset < size;
+                while (offset < size) {
+                    if (filled == buffer.length) {
+                        byte[] larger = new byte[buffer.length * 2];
+                        System.arraycopy(buffer, 0, larger, 0, filled);
+                        buffer = larger;
+                    }
+                    int read = channel.read(ByteBuffer.wrap(buffer, filled, buffer.length - filled), offset);
+                    if (read <= 0) {
+                        break;
+                    }
+                    offset += read;
+                    filled += read;
+                    int lineStart = reader.processLines(buffer, filled, output);
+                    filled -= lineStart;
+                    System.arraycopy(buffer, lineStart, buffer, 0, filled);
+                }
+                if (grew) {
+                    output.flush();
+                    lastGrowth = System.nanoTime();
+                } else if (idleMillis > 0 && System.nanoTime() - lastGrowth > TimeUnit.MILLISECONDS.toNanos(idleMillis)) {
+                    break;
+                }
+
+                WatchKey key;
+                try {
+                    key = watcher.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                if (key != null) {
+                    key.pollEvents();
+                    key.reset();
+                }
+            }
+
+            if (filled > 0) {
+                reader.processLine(buffer, 0, filled, output);
+            }
+            output.flush();
+        }
+    }
+}
@@ -1,45 +1,197 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This class manages animals, people and foods
  * and processes commands like feeding animals, animal visitation and listing food stock
+ * Feeding rounds (Feed All, Feed Species) feed many animals at once from the columns of the AnimalRegistry
  * It has methods to create and add animals, persons and foods
  * Also handles command execution with error handling
+ * Species specific behaviour (meal sizes, messages, cleaning times) comes from the Species handlers of a SpeciesTable
  */
 
 public class CommandProcessor {
     /*
     This class is generally for command execution, creation of all needed objects and processing of all commands
      */
-    private ArrayList<Animal> animals = new ArrayList<>();
+    private AnimalRegistry animals = new AnimalRegistry();
     private ArrayList<Person> people = new ArrayList<>();
-    private ArrayList<Foods> foods = new ArrayList<>();
 
-    public void processCommand(String command, StringBuilder output) throws ZooException {
+    /*
+    Indexes for the lookups done by every command, kept consistent by the add methods.
+    Like the earlier list scans, the first added animal, person or food of a key wins.
+     */
+    private HashMap<Integer, Person> personsById = new HashMap<>();
+    private HashMap<String, Integer> animalRowsByName = new HashMap<>();
+
+    // The stock of every warehouse, and the location id of every AnimalRegistry row
+    private final Warehouses warehouses = new Warehouses();
+    private int[] locationByRow = new int[64];
+
+    /*
+    Consumption tracking for the forecast command, time is counted in processed commands.
+    Low stock alerts are in grams per food type, -1 when no alert is set for it
+     */
+    private static final double FORECAST_HALF_LIFE = 1000.0;
+    private static final int DEFAULT_COMMANDS_PER_DAY = 100;
+    private final AtomicLong commandCount = new AtomicLong();
+    private final StockForecast forecast = new StockForecast(FORECAST_HALF_LIFE);
+    private final long[] alertGrams = new long[FoodType.values().length];
+
+    {
+        Arrays.fill(alertGrams, -1L);
+    }
+
+    // Tracks when every habitat is due for cleaning, the rows are the AnimalRegistry rows
+    private final CleaningScheduler cleaning = new CleaningScheduler();
+
+    // Sensor readings of the animals, also by AnimalRegistry rows
+    private final AnimalTelemetry telemetry = new AnimalTelemetry();
 
+    // The transaction opened by BEGIN, null outside of one. Checked once per debit, so feedings outside of it stay as they were
+    private volatile ZooTransaction transaction;
+
+    // Where successful feedings are logged for the history and totalFed commands, null when they are not logged
+    private FeedingLog feedingLog;
+
+    // The order food types are listed in
+    private static final FoodType[] LISTING_ORDER = {FoodType.PLANT, FoodType.FISH, FoodType.MEAT};
+
+    // Whether String.format writes numbers with ASCII digits and a '.' separator in the default locale
+    private static final boolean PLAIN_DECIMALS = String.format("%.3f", 1234.5).equals("1234.500");
+
+    public ZooOutcome processCommand(String command, Writer output) throws IOException {
+        /*
+        Executes one command and writes its output. Failures are written as error messages
+        and reported through the returned outcome instead of a thrown ZooException
+         */
+        countCommand();
+        ZooTransaction open = transaction;
+        if (open != null && !open.isDeferred(output)) {
+            output = open.startCommand();
+        }
         String[] tokens = command.split(",");
         String action = tokens[0];
 
         switch (action.toLowerCase()) {
             case "feed animal":
-                feed(tokens, output);
-                break;
+                return feed(tokens, output);
             case "animal visitation":
-                visit(tokens, output);
-                break;
+                return visit(tokens, output);
             case "list food stock":
-                listFood(output);
-                break;
+                return listFood(output);
+            case "feed all":
+                return feedRound(-1, "all animals", tokens, 1, output);
+            case "feed species": {
+                int species = tokens.length > 1 ? animals.findSpecies(tokens[1]) : -1;
+                if (species < 0) {
+                    return fail(ZooOutcome.UNKNOWN_SPECIES, tokens.length > 1 ? tokens[1] : "", output);
+                }
+                return feedRound(species, animals.getSpeciesName(species), tokens, 2, output);
+            }
+            case "forecast":
+                return forecast(tokens, output);
+            case "alert":
+                return setAlert(tokens, output);
+            case "nextcleaning":
+                return nextCleaning(tokens, output);
+            case "scheduleday":
+                return scheduleDay(output);
+            case "sensor":
+                return recordSensor(tokens, output);
+            case "vitals":
+                return vitals(tokens, output);
+            case "begin":
+                return begin(output);
+            case "savepoint":
+                return savepoint(tokens, output);
+            case "commit":
+                return commit(output);
+            case "rollback":
+                return rollback(tokens, output);
+            case "history":
+                return history(tokens, output);
+            case "totalfed":
+                return totalFed(tokens, output);
             default:
                 output.append("Unknown command: " + command)
                       .append("\n");
-                break;
+                return ZooOutcome.OK;
         }
     }
 
-    private void feed(String[] tokens, StringBuilder output) throws ZooException {
+    Writer commandOutput(Writer output) {
+        /*
+        Returns the Writer the next command's output goes to, which is the transaction's deferred output while one is open.
+        CommandReader writes the command header to it, so the header is dropped along with the command on a rollback
+         */
+        ZooTransaction open = transaction;
+        return open == null ? output : open.startCommand();
+    }
+
+    void countCommand() {
+        /*
+        Advances the clock of the consumption forecast, called once for every command,
+        CommandReader calls it itself for the commands it runs without processCommand
+         */
+        commandCount.incrementAndGet();
+    }
+
+    void countCommands(int count) {
+        /*
+        Advances the forecast clock by the commands ParallelCommandRunner ran without countCommand
+         */
+        commandCount.addAndGet(count);
+    }
+
+    long getCommandCount() {
+        return commandCount.get();
+    }
+
+    boolean inTransaction() {
+        return transaction != null;
+    }
+
+    FoodType[] stockTypes(int personId, String animalName) {
+        /*
+        Returns the food types a feeding of the animal by the person takes from the stock,
+        null if the feeding fails before it gets to the stock
+         */
+        int row = findAnimalRow(animalName);
+        if (row < 0 || !(findPersonByID(personId) instanceof Personnel)) {
+            return null;
+        }
+        return animals.getSpeciesFoods(animals.getSpecies(row));
+    }
+
+    int cleanedRow(int personId, String animalName) {
+        /*
+        Returns the row of the habitat a visit of the animal by the person cleans, -1 if it cleans none
+         */
+        int row = findAnimalRow(animalName);
+        return row >= 0 && findPersonByID(personId) instanceof Personnel ? row : -1;
+    }
+
+    void markCleaned(int row) {
+        cleaning.markCleanedNow(row);
+    }
+
+    private static ZooOutcome fail(ZooOutcome outcome, String detail, Writer output) throws IOException {
+        outcome.writeMessage(output, detail);
+        return outcome;
+    }
+
+    private ZooOutcome feed(String[] tokens, Writer output) throws IOException {
         /*
         Handles the feed animal command with validation of person's ID and animal's name and checking food stock
          */
@@ -51,18 +203,38 @@ public class CommandProcessor {
             numOfMeals = Double.parseDouble(tokens[3]);
         } catch (NumberFormatException e) {
             String fullComand = String.join(",", tokens);
-            throw new InvalidCommandException("Error processing command: " + fullComand + "\nError: " + e.getMessage());
+            return fail(ZooOutcome.INVALID_COMMAND, fullComand + "\nError: " + e.getMessage(), output);
         }
 
-        Person person = findPersonByID(personIdStr);
-        Animal animal = findAnimalByName(animalName);
+        return feed(Integer.parseInt(personIdStr), personIdStr, animalName, numOfMeals, output);
+    }
+
+    ZooOutcome feed(int personId, String personIdStr, String animalName, double numOfMeals, Writer output) throws IOException {
+        /*
+        Feeds the animal once the command is parsed, also used directly by CommandReader.
+        personIdStr is the id as written in the command, or null to print the parsed id.
+        Several threads can feed at the same time, each with its own output, the food stock is the only shared state it changes
+         */
+        return feed(personId, personIdStr, animalName, numOfMeals, commandCount.get(), null, output);
+    }
+
+    ZooOutcome feed(int personId, String personIdStr, String animalName, double numOfMeals, long command, StockTurn turn,
+                    Writer output) throws IOException {
+        /*
+        Feeds the animal as the given command of the forecast clock. With a turn (see ParallelCommandRunner) the stock
+        and the forecast are only touched once the earlier commands eating the same foods are done, so they change
+        in the same order as in a sequential run, and the feeding is not logged, the caller logs it with logFeeding
+         */
+        Person person = findPersonByID(personId);
+        int row = findAnimalRow(animalName);
+        Animal animal = row < 0 ? null : animals.getAnimal(row);
 
         if (person == null) {
-            throw new InvalidPersonID("Error: There are no visitors or personnel with the id " + personIdStr);
+            return fail(ZooOutcome.INVALID_PERSON_ID, personIdStr != null ? personIdStr : Integer.toString(personId), output);
         }
 
         if (animal == null) {
-            throw new InvalidAnimal("Error: Animal not found: " + animalName);
+            return fail(ZooOutcome.ANIMAL_NOT_FOUND, animalName, output);
         }
 
         if (person instanceof Personnel) {
@@ -74,89 +246,284 @@ public class CommandProcessor {
         }
 
         if (!(person instanceof Personnel)) {
-            throw new VisitorsCantFeed("Error: Visitors do not have the authority to feed animals.");
+            return fail(ZooOutcome.VISITORS_CANT_FEED, null, output);
         }
 
-        double requiredFood = Math.round(animal.eat() * numOfMeals * 1000.0) / 1000.0;
+        // The meal size and the food types come from the registry, computed once when the animal was added
+        long requiredGrams = Math.round(animals.getMealSize(row) * numOfMeals * 1000.0);
+        double requiredFood = requiredGrams / 1000.0;
+        FoodType[] foodTypes = animals.getSpeciesFoods(animals.getSpecies(row));
+
+        long[] portions = new long[foodTypes.length];
+        Arrays.fill(portions, requiredGrams);
+        long[] remaining = new long[foodTypes.length];
+        StockDraws draws = new StockDraws();
+        if (turn != null) {
+            turn.acquire(foodTypes);
+        }
+        try {
+            ZooOutcome reserved = debitAll(foodTypes, portions, remaining, warehouses.preference(locationByRow[row]), draws, output);
+            if (!reserved.isSuccess()) {
+                return reserved;
+            }
+            forecast.record(animals.getSpecies(row), requiredGrams, command);
+            if (turn == null) {
+                logFeeding(row, personId, requiredGrams);
+            }
+        } finally {
+            if (turn != null) {
+                turn.release(foodTypes);
+            }
+        }
 
-        String foodType = animal.getFoodType();
-        String[] foodTypes = foodType.split(" and ");
+        // Print feeding message
+        animals.getSpeciesHandler(animals.getSpecies(row)).writeFeeding(output, animal.getName(), formatAmount(requiredFood));
+        writeSupply(draws, output);
+        writeAlerts(foodTypes, portions, remaining, output);
+        return ZooOutcome.OK;
+    }
 
+    void logFeeding(int personId, String animalName, double numOfMeals) throws IOException {
+        /*
+        Logs a feeding done by feed with a turn, in the order the feedings were commanded
+         */
+        int row = findAnimalRow(animalName);
+        logFeeding(row, personId, Math.round(animals.getMealSize(row) * numOfMeals * 1000.0));
+    }
 
-        for (String type : foodTypes) {
-            Foods food = findFoodByType(type);
-            if (food == null) {
-                throw new NotEnoughStock("Error: No food stock available for " + type.trim());
-            } else if (food.getAmount() < requiredFood) {
-                throw new NotEnoughFood("Error: Not enough " + food.getType());
+    private void logFeeding(int row, int personId, long grams) throws IOException {
+        if (feedingLog != null) {
+            for (FoodType type : animals.getSpeciesFoods(animals.getSpecies(row))) {
+                feedingLog.append(animals.getAnimal(row).getName(), personId, type, grams);
             }
         }
+    }
 
-        for (String type : foodTypes) {
-            Foods food = findFoodByType(type.trim());
-            food.setAmount(food.getAmount() - requiredFood);
+    private ZooOutcome feedRound(int species, String fedAnimals, String[] tokens, int mealsIndex, Writer output) throws IOException {
+        /*
+        Handles the Feed All and Feed Species commands. The food needed by every animal is summed up per species
+        from the registry columns, then the stock of every food type is checked once and, only if all of them
+        have enough, deducted once. So either every animal of the round is fed or none of them
+         */
+        double numOfMeals;
+        try {
+            numOfMeals = Double.parseDouble(tokens.length > mealsIndex ? tokens[mealsIndex] : "");
+        } catch (NumberFormatException e) {
+            String fullComand = String.join(",", tokens);
+            return fail(ZooOutcome.INVALID_COMMAND, fullComand + "\nError: " + e.getMessage(), output);
         }
 
-        // Print feeding message
-        switch (animal.getType()) {
-            case "Lion":
-                output.append(animal.getName() + " has been given " + String.format("%.3f", requiredFood) + " kgs of meat\n");
-                break;
-            case "Penguin":
-                output.append(animal.getName() + " has been given " + String.format("%.3f", requiredFood) + " kgs of various kinds of fish\n");
-                break;
-            case "Elephant":
-                output.append(animal.getName() + " has been given " + String.format("%.3f", requiredFood) + " kgs assorted fruits and hay\n");
-                break;
-            case "Chimpanzee":
-                output.append(animal.getName() + " has been given " + String.format("%.3f", requiredFood) + " kgs of meat and " + String.format("%.3f", requiredFood) + " kgs of leaves\n");
-                break;
-            default:
-                break;
+        long[] gramsBySpecies = new long[animals.getSpeciesCount()];
+        int fed = animals.requiredGrams(species, numOfMeals, gramsBySpecies);
+
+        long[] gramsByFood = new long[FoodType.values().length];
+        for (int code = 0; code < gramsBySpecies.length; code++) {
+            for (FoodType type : animals.getSpeciesFoods(code)) {
+                gramsByFood[type.ordinal()] += gramsBySpecies[code];
+            }
         }
+
+        FoodType[] neededTypes = new FoodType[LISTING_ORDER.length];
+        long[] neededGrams = new long[LISTING_ORDER.length];
+        int needed = 0;
+        for (FoodType type : LISTING_ORDER) {
+            if (gramsByFood[type.ordinal()] != 0) {
+                neededTypes[needed] = type;
+                neededGrams[needed++] = gramsByFood[type.ordinal()];
+            }
+        }
+        neededTypes = Arrays.copyOf(neededTypes, needed);
+        long[] remaining = new long[needed];
+        StockDraws draws = new StockDraws();
+        ZooOutcome reserved = debitAll(neededTypes, neededGrams, remaining, warehouses.preference(Warehouses.NO_LOCATION), draws, output);
+        if (!reserved.isSuccess()) {
+            return reserved;
+        }
+        long command = commandCount.get();
+        for (int code = 0; code < gramsBySpecies.length; code++) {
+            if (gramsBySpecies[code] != 0) {
+                forecast.record(code, gramsBySpecies[code], command);
+            }
+        }
+
+        output.append("Feeding round for " + fedAnimals + ": " + fed + " animals fed " + tokens[mealsIndex] + " meals.\n");
+        for (int i = 0; i < needed; i++) {
+            output.append("Given " + formatAmount(neededGrams[i] / 1000.0) + " kgs of " + neededTypes[i].getName() + "\n");
+        }
+        writeSupply(draws, output);
+        if (feedingLog != null) {
+            logRound(species, numOfMeals);
+        }
+        writeAlerts(neededTypes, neededGrams, remaining, output);
+        return ZooOutcome.OK;
     }
 
-    private Person findPersonByID(String personIdStr) {
+    private void logRound(int species, double numOfMeals) throws IOException {
         /*
-        This method is for finding the person with the specified ID, if it does not exist
-        a custom exception will be thrown
+        Logs the feeding of every animal of a round, a round has no person so the person id is 0
          */
-        int personId = Integer.parseInt(personIdStr); // Convert String to int
-        for (Person person : people) {
-            if (person.getId() == personId) { // Comparing them in int
-                return person;
+        for (int row = 0; row < animals.size(); row++) {
+            int code = animals.getSpecies(row);
+            if (species < 0 || code == species) {
+                long grams = Math.round(animals.getMealSize(row) * numOfMeals * 1000.0);
+                for (FoodType type : animals.getSpeciesFoods(code)) {
+                    feedingLog.append(animals.getAnimal(row).getName(), 0, type, grams);
+                }
             }
         }
-        return null;
     }
 
-    private Animal findAnimalByName(String animalName) {
+    private ZooOutcome debitAll(FoodType[] types, long[] grams, long[] remaining, int[] order, StockDraws draws,
+                                Writer output) throws IOException {
         /*
-        This method is for finding the animal with the specified name, if it does not exist
-        a custom exception will be thrown
+        Takes grams[i] of types[i] from the warehouses in the given preference order for every i, or nothing at all,
+        the grams left of every food over all warehouses are stored in remaining and the draws in draws.
+        Every draw is atomic on its own and when one food is missing or short, the draws already made are credited back,
+        so concurrent feedings never take only part of what an animal needs.
+        Foods are debited in the given order, so errors are reported like the earlier check loop did
          */
-        for (Animal animal : animals) {
-            if (animal.getName().equals(animalName)) {
-                return animal;
+        for (int i = 0; i < types.length; i++) {
+            long left = warehouses.draw(types[i], grams[i], order, draws);
+            ZooOutcome failure = null;
+            if (left == Warehouses.NO_STOCK) {
+                failure = ZooOutcome.NO_FOOD_STOCK;
+            } else if (left == Foods.NOT_ENOUGH) {
+                failure = ZooOutcome.NOT_ENOUGH_FOOD;
             }
+            if (failure != null) {
+                draws.undo(0, warehouses);
+                return fail(failure, types[i].getName(), output);
+            }
+            // Summing up all warehouses is only needed for a low stock alert, with one warehouse left is the total
+            int type = types[i].ordinal();
+            remaining[i] = warehouses.size() == 1 || alertGrams[type] < 0 ? left : warehouses.totalGrams(types[i]);
         }
-        return null;
+        ZooTransaction open = transaction;
+        if (open != null) {
+            for (int i = 0; i < draws.size(); i++) {
+                open.logDebit(draws.getStock(i), draws.getGrams(i));
+            }
+        }
+        return ZooOutcome.OK;
+    }
+
+    private void writeSupply(StockDraws draws, Writer output) throws IOException {
+        /*
+        Writes which warehouse supplied what, only when the zoo has more than one warehouse so single-warehouse output stays as it was
+         */
+        if (warehouses.size() < 2) {
+            return;
+        }
+        output.append("Supplied by ");
+        for (int i = 0; i < draws.size(); i++) {
+            Foods food = warehouses.getStock(draws.getStock(i));
+            output.append(i == 0 ? "" : ", ").append(warehouses.getWarehouseName(draws.getStock(i))).append(": ")
+                    .append(formatAmount(draws.getGrams(i) / 1000.0)).append(" kgs of ").append(food.getType());
+        }
+        output.append('\n');
     }
 
-    private Foods findFoodByType(String type) {
+    private void writeAlerts(FoodType[] types, long[] grams, long[] remaining, Writer output) throws IOException {
         /*
-        This method is to find food by the specific type, because every animal eats a different
-        type of food
+        Writes a low stock warning for every food whose stock went below its alert by this debit.
+        Debits are atomic, so under concurrent feedings exactly one of them crosses the alert
          */
-        for (Foods food : foods) {
-            if (food.getType().equalsIgnoreCase(type)) {
-                return food;
+        for (int i = 0; i < types.length; i++) {
+            long alert = alertGrams[types[i].ordinal()];
+            if (alert >= 0 && remaining[i] < alert && remaining[i] + grams[i] >= alert) {
+                writeLowStock(types[i], remaining[i], alert, output);
             }
         }
-        return null;
     }
 
-    private void visit(String[] tokens, StringBuilder output) throws ZooException {
+    private static void writeLowStock(FoodType type, long grams, long alert, Writer output) throws IOException {
+        output.append("Warning: " + type.getName() + " stock is low, " + formatAmount(grams / 1000.0)
+                + " kgs left (alert at " + formatAmount(alert / 1000.0) + " kgs)\n");
+    }
+
+    private ZooOutcome setAlert(String[] tokens, Writer output) throws IOException {
+        /*
+        Handles the alert,<foodType>,<kg> command, afterwards a warning is written whenever a feeding
+        takes the stock of that food below the given amount. A stock that is already below it is reported at once
+         */
+        FoodType type = tokens.length > 1 ? FoodType.fromName(tokens[1]) : null;
+        long grams;
+        try {
+            if (type == null) {
+                throw new NumberFormatException("Unknown food type " + (tokens.length > 1 ? tokens[1] : ""));
+            }
+            grams = Foods.toGrams(Double.parseDouble(tokens.length > 2 ? tokens[2] : ""));
+        } catch (NumberFormatException e) {
+            String fullComand = String.join(",", tokens);
+            return fail(ZooOutcome.INVALID_COMMAND, fullComand + "\nError: " + e.getMessage(), output);
+        }
+
+        alertGrams[type.ordinal()] = grams;
+        output.append("Low stock alert for " + type.getName() + " set at " + formatAmount(grams / 1000.0) + " kgs\n");
+        long stock = warehouses.totalGrams(type);
+        if (warehouses.firstStock(type) != null && stock < grams) {
+            writeLowStock(type, stock, grams, output);
+        }
+        return ZooOutcome.OK;
+    }
+
+    private ZooOutcome forecast(String[] tokens, Writer output) throws IOException {
+        /*
+        Handles the forecast[,<commandsPerDay>] command. The consumption rate of every food is the sum of the rolling
+        rates of the species eating it, the days left are its stock divided by what is eaten in a day of commands
+         */
+        int commandsPerDay;
+        try {
+            commandsPerDay = tokens.length > 1 ? Integer.parseInt(tokens[1]) : DEFAULT_COMMANDS_PER_DAY;
+            if (commandsPerDay <= 0) {
+                throw new NumberFormatException("Commands per day must be positive: " + commandsPerDay);
+            }
+        } catch (NumberFormatException e) {
+            String fullComand = String.join(",", tokens);
+            return fail(ZooOutcome.INVALID_COMMAND, fullComand + "\nError: " + e.getMessage(), output);
+        }
+
+        long command = commandCount.get();
+        double[] gramsPerCommand = new double[FoodType.values().length];
+        for (int code = 0; code < animals.getSpeciesCount(); code++) {
+            double rate = forecast.rate(code, command);
+            for (FoodType type : animals.getSpeciesFoods(code)) {
+                gramsPerCommand[type.ordinal()] += rate;
+            }
+        }
+
+        output.append("Forecasting food stock at " + commandsPerDay + " commands per day:\n");
+        for (FoodType type : LISTING_ORDER) {
+            Foods food = warehouses.firstStock(type);
+            if (food == null) {
+                continue;
+            }
+            long stock = warehouses.totalGrams(type);
+            double gramsPerDay = gramsPerCommand[type.ordinal()] * commandsPerDay;
+            output.append(food.getType()).append(": ").append(formatAmount(stock / 1000.0)).append(" kgs, ");
+            if (gramsPerDay < 1e-6) {
+                output.append("not being eaten\n");
+            } else {
+                output.append("runs out in " + String.format("%.1f", stock / gramsPerDay) + " days\n");
+            }
+        }
+        return ZooOutcome.OK;
+    }
+
+    private Person findPersonByID(int personId) {
+        /*
+        This method is for finding the person with the specified ID in the person index,
+        null is returned if it does not exist
+         */
+        return personsById.get(personId);
+    }
+
+    int findAnimalRow(String animalName) {
+        Integer row = animalRowsByName.get(animalName);
+        return row == null ? -1 : row;
+    }
+
+    private ZooOutcome visit(String[] tokens, Writer output) throws IOException {
         /*
         This method is basically for the visit command, it handles both the exceptions in which
         there might not be the specified animal or person. Also prints the different interactions
@@ -165,11 +532,28 @@ public class CommandProcessor {
         String personIdStr = tokens[1];
         String animalName = tokens[2];
 
-        Person person = findPersonByID(personIdStr);
-        Animal animal = findAnimalByName(animalName);
+        return visit(Integer.parseInt(personIdStr), personIdStr, animalName, output);
+    }
+
+    ZooOutcome visit(int personId, String personIdStr, String animalName, Writer output) throws IOException {
+        /*
+        Visits the animal once the command is parsed, also used directly by CommandReader.
+        personIdStr is the id as written in the command, or null to print the parsed id
+         */
+        return visit(personId, personIdStr, animalName, true, output);
+    }
+
+    ZooOutcome visit(int personId, String personIdStr, String animalName, boolean markCleaned, Writer output) throws IOException {
+        /*
+        Visits the animal, without markCleaned a cleaning is left to the caller (see cleanedRow),
+        so ParallelCommandRunner can tell the cleaning scheduler about cleanings in input order
+         */
+        Person person = findPersonByID(personId);
+        int row = findAnimalRow(animalName);
+        Animal animal = row < 0 ? null : animals.getAnimal(row);
 
         if (person == null) {
-            throw new InvalidPersonID("Error: There are no visitors or personnel with the id " + personIdStr);
+            return fail(ZooOutcome.INVALID_PERSON_ID, personIdStr != null ? personIdStr : Integer.toString(personId), output);
         }
 
         if (person instanceof Personnel) {
@@ -177,7 +561,7 @@ public class CommandProcessor {
         }
 
         if (animal == null) {
-            throw new InvalidAnimal("Error: There are no animals with the name " + animalName);
+            return fail(ZooOutcome.NO_ANIMAL_WITH_NAME, animalName, output);
         }
 
         if (!(person instanceof Personnel)) {
@@ -187,74 +571,401 @@ public class CommandProcessor {
 
         if(person instanceof Personnel) {
             output.append(person.getName() + " started cleaning " + animal.getName() +"'s habitat.\n");
+            animal.getSpecies().writeCleaning(output, animal.getName());
+            // The cleaning scheduler learns about it without any output of its own
+            if (markCleaned) {
+                markCleaned(row);
+            }
+        }
+        return ZooOutcome.OK;
+    }
 
-            switch(animal.getType()){
-                case "Lion":
-                    output.append("Cleaning " + animal.getName() + "’s habitat: Removing bones and refreshing sand.\n");
-                    break;
-                case "Elephant":
-                    output.append("Cleaning " + animal.getName() + "’s habitat: Washing the water area.\n");
-                    break;
-                case "Penguin":
-                    output.append("Cleaning " + animal.getName() + "’s habitat: Replenishing ice and scrubbing walls.\n");
-                    break;
-                case "Chimpanzee":
-                    output.append("Cleaning " + animal.getName() + "’s habitat: Sweeping the enclosure and replacing branches.\n");
-                    break;
-                default:
-                    break;
+    private ZooOutcome begin(Writer output) throws IOException {
+        /*
+        Handles the BEGIN command. Until COMMIT or ROLLBACK every stock debit is logged so it can be undone,
+        and the output of the commands is deferred. Only the food stock and the forecast are rolled back,
+        visits, cleanings, alerts and sensor readings stay as they were done
+         */
+        if (transaction != null) {
+            return fail(ZooOutcome.TRANSACTION_OPEN, null, output);
+        }
+        output.append("Transaction started.\n");
+        transaction = new ZooTransaction(output, forecast, feedingLog);
+        return ZooOutcome.OK;
+    }
+
+    private ZooOutcome savepoint(String[] tokens, Writer output) throws IOException {
+        /*
+        Handles the SAVEPOINT,<name> command, a savepoint with the same name is replaced
+         */
+        ZooTransaction open = transaction;
+        String name = tokens.length > 1 ? tokens[1] : "";
+        if (open == null) {
+            return fail(ZooOutcome.NO_TRANSACTION, "set savepoint " + name + " in.", output);
+        }
+        output.append("Savepoint " + name + " set.\n");
+        open.addSavepoint(name, forecast);
+        return ZooOutcome.OK;
+    }
+
+    private ZooOutcome commit(Writer output) throws IOException {
+        ZooTransaction open = transaction;
+        if (open == null) {
+            return fail(ZooOutcome.NO_TRANSACTION, "commit.", output);
+        }
+        output.append("Transaction committed, " + open.getCommandsBefore() + " commands applied.\n");
+        transaction = null;
+        open.finish();
+        return ZooOutcome.OK;
+    }
+
+    private ZooOutcome rollback(String[] tokens, Writer output) throws IOException {
+        /*
+        Handles ROLLBACK, which undoes the whole transaction and ends it,
+        and ROLLBACK,<savepoint>, which undoes what came after the savepoint and keeps the transaction open
+         */
+        ZooTransaction open = transaction;
+        if (open == null) {
+            return fail(ZooOutcome.NO_TRANSACTION, "roll back.", output);
+        }
+        if (tokens.length > 1) {
+            int undone = open.rollbackTo(tokens[1], warehouses, forecast);
+            if (undone < 0) {
+                return fail(ZooOutcome.UNKNOWN_SAVEPOINT, tokens[1], output);
             }
+            output.append("Rolled back to savepoint " + tokens[1] + ", " + undone + " commands undone.\n");
+            return ZooOutcome.OK;
         }
+        int undone = open.rollback(warehouses, forecast);
+        output.append("Transaction rolled back, " + undone + " commands undone.\n");
+        transaction = null;
+        open.finish();
+        return ZooOutcome.OK;
+    }
 
+    void endCommands(Writer output) throws IOException {
+        /*
+        Called after the last command, a transaction left open is rolled back like a ROLLBACK command would
+         */
+        ZooTransaction open = transaction;
+        if (open != null) {
+            Writer deferred = open.startCommand();
+            int undone = open.rollback(warehouses, forecast);
+            deferred.append("Transaction not committed at the end of the commands, " + undone + " commands undone.\n");
+            transaction = null;
+            open.finish();
+        }
     }
 
-    private void listFood(StringBuilder output) {
+    private ZooOutcome history(String[] tokens, Writer output) throws IOException {
+        /*
+        Handles the history,<animal>,<from>,<to> command, listing the logged feedings of the animal.
+        from and to are ISO dates (both days included) or ISO instants (to not included)
+         */
+        if (feedingLog == null) {
+            return fail(ZooOutcome.NO_FEEDING_LOG, null, output);
+        }
+        String animalName = tokens.length > 1 ? tokens[1] : "";
+        long from;
+        long to;
+        try {
+            from = parseTime(tokens.length > 2 ? tokens[2] : "", false);
+            to = parseTime(tokens.length > 3 ? tokens[3] : "", true);
+        } catch (RuntimeException e) {
+            String fullComand = String.join(",", tokens);
+            return fail(ZooOutcome.INVALID_COMMAND, fullComand + "\nError: " + e.getMessage(), output);
+        }
+        output.append("Feeding history of " + animalName + " from " + tokens[2] + " to " + tokens[3] + ":\n");
+        FoodType[] types = FoodType.values();
+        long[] totals = new long[2];
+        int read = feedingLog.history(animalName, from, to, (time, personId, foodType, grams) -> {
+            output.append(Instant.ofEpochMilli(time).truncatedTo(ChronoUnit.SECONDS) + " " + formatAmount(grams / 1000.0)
+                    + " kgs of " + types[foodType].getName() + (personId == 0 ? " in a feeding round" : " by " + personId) + "\n");
+            totals[0] += grams;
+            totals[1]++;
+        });
+        output.append(totals[1] + " feedings, " + formatAmount(totals[0] / 1000.0) + " kgs in total ("
+                + read + " of " + feedingLog.getBlockCount() + " blocks read)\n");
+        return ZooOutcome.OK;
+    }
 
+    private ZooOutcome totalFed(String[] tokens, Writer output) throws IOException {
         /*
-        This method is for the listing food stock command, it works with List and lists the current
-        available food stock with the done actions and in the order it has to be
+        Handles the totalFed,<foodType>,<day> command, the day is an ISO date in UTC
          */
-        output.append("Listing available Food Stock:\n");
+        if (feedingLog == null) {
+            return fail(ZooOutcome.NO_FEEDING_LOG, null, output);
+        }
+        FoodType type = tokens.length > 1 ? FoodType.fromName(tokens[1]) : null;
+        LocalDate day;
+        try {
+            if (type == null) {
+                throw new IllegalArgumentException("Unknown food type " + (tokens.length > 1 ? tokens[1] : ""));
+            }
+            day = LocalDate.parse(tokens.length > 2 ? tokens[2] : "");
+        } catch (RuntimeException e) {
+            String fullComand = String.join(",", tokens);
+            return fail(ZooOutcome.INVALID_COMMAND, fullComand + "\nError: " + e.getMessage(), output);
+        }
+        long from = day.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+        long to = day.plusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+        long[] result = new long[3];
+        feedingLog.totalFed(type, from, to, result);
+        output.append("Total " + type.getName() + " fed on " + day + ": " + formatAmount(result[0] / 1000.0) + " kgs in "
+                + result[1] + " feedings (" + result[2] + " of " + feedingLog.getBlockCount() + " blocks read)\n");
+        return ZooOutcome.OK;
+    }
 
-        // Define the desired order
-        List<String> order = Arrays.asList("Plant", "Fish", "Meat");
+    private static long parseTime(String text, boolean end) {
+        /*
+        Parses an ISO instant, or an ISO date standing for the start of the day (the start of the next day for an end) in UTC
+         */
+        if (text.indexOf('T') >= 0) {
+            return Instant.parse(text).toEpochMilli();
+        }
+        LocalDate day = LocalDate.parse(text);
+        return (end ? day.plusDays(1) : day).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+    }
 
-        for (String type : order) {
-            Foods food = findFoodByType(type);
+    private ZooOutcome recordSensor(String[] tokens, Writer output) throws IOException {
+        /*
+        Handles the sensor,<animal>,<temperature|activity>,<value> command, the reading is taken at the current time.
+        Sensors normally report through getTelemetry() directly, this is for readings in a commands file
+         */
+        String animalName = tokens.length > 1 ? tokens[1] : "";
+        int metric;
+        double value;
+        try {
+            metric = tokens.length > 2 ? AnimalTelemetry.metric(tokens[2]) : -1;
+            if (metric < 0) {
+                throw new NumberFormatException("Unknown sensor " + (tokens.length > 2 ? tokens[2] : ""));
+            }
+            value = Double.parseDouble(tokens.length > 3 ? tokens[3] : "");
+            if (!Double.isFinite(value)) {
+                throw new NumberFormatException("Reading is not a finite number: " + tokens[3]);
+            }
+        } catch (NumberFormatException e) {
+            String fullComand = String.join(",", tokens);
+            return fail(ZooOutcome.INVALID_COMMAND, fullComand + "\nError: " + e.getMessage(), output);
+        }
+        int row = findAnimalRow(animalName);
+        if (row < 0) {
+            return fail(ZooOutcome.NO_ANIMAL_WITH_NAME, animalName, output);
+        }
+        if (!telemetry.record(row, metric, telemetry.now(), value)) {
+            output.append("Warning: " + AnimalTelemetry.metricName(metric) + " reading of " + animalName + " dropped, too many readings at once\n");
+            return ZooOutcome.OK;
+        }
+        output.append(AnimalTelemetry.metricName(metric) + " reading of " + value + " recorded for " + animalName + ".\n");
+        return ZooOutcome.OK;
+    }
+
+    private ZooOutcome vitals(String[] tokens, Writer output) throws IOException {
+        /*
+        Handles the vitals,<animal> command, it writes min, max and mean of every sensor over the last minute and hour
+         */
+        String animalName = tokens.length > 1 ? tokens[1] : "";
+        int row = findAnimalRow(animalName);
+        if (row < 0) {
+            return fail(ZooOutcome.NO_ANIMAL_WITH_NAME, animalName, output);
+        }
+        output.append("Vitals of " + animalName + ":\n");
+        for (int metric = AnimalTelemetry.TEMPERATURE; metric <= AnimalTelemetry.ACTIVITY; metric++) {
+            for (int window = 0; window < AnimalTelemetry.windowCount(); window++) {
+                double[] aggregate = telemetry.aggregate(row, metric, window);
+                output.append(AnimalTelemetry.metricName(metric) + " " + AnimalTelemetry.windowName(window) + ": ");
+                long count = (long) aggregate[3];
+                if (count == 0) {
+                    output.append("no readings\n");
+                } else {
+                    output.append("min " + String.format("%.3f", aggregate[0]) + ", max " + String.format("%.3f", aggregate[1])
+                            + ", mean " + String.format("%.3f", aggregate[2]) + " (" + count + " readings)\n");
+                }
+            }
+        }
+        return ZooOutcome.OK;
+    }
+
+    private ZooOutcome nextCleaning(String[] tokens, Writer output) throws IOException {
+        /*
+        Handles the nextCleaning,<personnelId> command, the personnel is given the most overdue habitat,
+        which counts as cleaned at the current time of the scheduler's clock
+         */
+        String personIdStr = tokens.length > 1 ? tokens[1] : "";
+        Person person;
+        try {
+            person = findPersonByID(Integer.parseInt(personIdStr));
+        } catch (NumberFormatException e) {
+            String fullComand = String.join(",", tokens);
+            return fail(ZooOutcome.INVALID_COMMAND, fullComand + "\nError: " + e.getMessage(), output);
+        }
+        if (person == null) {
+            return fail(ZooOutcome.INVALID_PERSON_ID, personIdStr, output);
+        }
+        if (!(person instanceof Personnel)) {
+            return fail(ZooOutcome.VISITORS_CANT_CLEAN, null, output);
+        }
+
+        int row;
+        long now;
+        long due;
+        synchronized (cleaning) {
+            row = cleaning.mostOverdue();
+            if (row < 0) {
+                output.append("There are no habitats to clean.\n");
+                return ZooOutcome.OK;
+            }
+            now = cleaning.now();
+            due = cleaning.dueTime(row);
+            cleaning.markCleaned(row, now);
+        }
+        Animal animal = animals.getAnimal(row);
+        output.append(person.getName() + " is assigned to clean " + animal.getName() + "'s habitat, "
+                + (due <= now ? "overdue by " + (now - due) : "due in " + (due - now)) + " minutes.\n");
+        animal.getSpecies().writeCleaning(output, animal.getName());
+        return ZooOutcome.OK;
+    }
+
+    private ZooOutcome scheduleDay(Writer output) throws IOException {
+        /*
+        Handles the scheduleDay command, simulating the next day of the scheduler's clock. Whenever a personnel is free
+        it takes the most overdue habitat, waiting until it is due, and is busy for the cleaning's duration.
+        Personnel stop when nothing becomes due before the end of the day, then the clock moves to the end of the day
+         */
+        List<Person> personnel = new ArrayList<>();
+        for (Person person : people) {
+            if (person instanceof Personnel && personsById.get(person.getId()) == person) {
+                personnel.add(person);
+            }
+        }
+        if (personnel.isEmpty()) {
+            output.append("There are no personnel to clean habitats.\n");
+            return ZooOutcome.OK;
+        }
+
+        synchronized (cleaning) {
+            long start = cleaning.now();
+            long end = start + CleaningScheduler.MINUTES_PER_DAY;
+            output.append("Cleaning schedule from " + CleaningScheduler.formatTime(start) + " to " + CleaningScheduler.formatTime(end) + ":\n");
+
+            // Personnel ordered by the time they are free, then by their order in the persons file
+            PriorityQueue<long[]> free = new PriorityQueue<>((a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+            for (int i = 0; i < personnel.size(); i++) {
+                free.add(new long[]{start, i});
+            }
+            int cleaned = 0;
+            while (!free.isEmpty() && cleaning.mostOverdue() >= 0) {
+                long[] next = free.poll();
+                int row = cleaning.mostOverdue();
+                long time = Math.max(next[0], cleaning.dueTime(row));
+                if (time >= end) {
+                    continue;
+                }
+                long finish = time + cleaning.getDuration(row);
+                Animal animal = animals.getAnimal(row);
+                output.append(CleaningScheduler.formatTime(time) + " " + personnel.get((int) next[1]).getName() + ": ");
+                animal.getSpecies().writeCleaning(output, animal.getName());
+                cleaning.markCleaned(row, finish);
+                cleaned++;
+                if (cleaning.dueTime(row) <= time) {
+                    // The habitat is due again at once, taking it again would never end the day
+                    break;
+                }
+                next[0] = finish;
+                free.add(next);
+            }
+            cleaning.advanceTo(end);
+            output.append(cleaned + " habitats cleaned, " + cleaning.countDue(end) + " due at " + CleaningScheduler.formatTime(end) + ".\n");
+        }
+        return ZooOutcome.OK;
+    }
+
+    ZooOutcome listFood(Writer output) throws IOException {
+
+        /*
+        This method is for the listing food stock command, it lists the current
+        available food stock with the done actions and in the order it has to be.
+        With several warehouses the amounts are the totals over all of them
+         */
+        output.append("Listing available Food Stock:\n");
+
+        for (FoodType type : LISTING_ORDER) {
+            Foods food = warehouses.firstStock(type);
             if (food != null) {
                 output.append(food.getType()).append(": ")
-                        .append(String.format("%.3f", food.getAmount())).append(" kgs\n");
+                        .append(formatAmount(warehouses.totalGrams(type) / 1000.0)).append(" kgs\n");
             }
         }
+        return ZooOutcome.OK;
+    }
+
+    static String formatAmount(double amount) {
+        /*
+        Gives the same text as String.format("%.3f", amount), without going through Formatter for the usual amounts.
+        The fast path is only taken when rounding to three decimals cannot be affected by the
+        error of amount * 1000, otherwise and for other locales String.format is used
+         */
+        double scaled = amount * 1000.0;
+        double fraction = scaled - Math.floor(scaled);
+        if (!PLAIN_DECIMALS || !(amount >= 0.0 && amount < 1e12) || (fraction > 0.4 && fraction < 0.6)) {
+            return String.format("%.3f", amount);
+        }
+        long thousandths = Math.round(scaled);
+        long whole = thousandths / 1000;
+        int decimals = (int) (thousandths % 1000);
+        StringBuilder text = new StringBuilder(20).append(whole).append('.');
+        if (decimals < 100) {
+            text.append('0');
+        }
+        if (decimals < 10) {
+            text.append('0');
+        }
+        return text.append(decimals).toString();
     }
 
     // Add methods for adding the created objects into the List
     public void addAnimal(Animal animal) {
-        animals.add(animal);
+        int row = animals.add(animal);
+        animalRowsByName.putIfAbsent(animal.getName(), row);
+        cleaning.addHabitat(row, animal.getSpecies());
+        telemetry.addAnimal(row);
+        if (row >= locationByRow.length) {
+            locationByRow = Arrays.copyOf(locationByRow, Math.max(row + 1, locationByRow.length * 2));
+        }
+        locationByRow[row] = warehouses.location(animal.getX(), animal.getY());
+    }
+
+    /*
+    The telemetry the sensor threads report to, the rows of the animals are found with findAnimalRow
+     */
+    AnimalTelemetry getTelemetry() {
+        return telemetry;
     }
 
     public void addPerson(Person person) {
         people.add(person);
+        personsById.putIfAbsent(person.getId(), person);
     }
     public void addFood(Foods food) {
-        foods.add(food);
+        warehouses.addStock(food);
+    }
+
+    /*
+    Logs every successful feeding to the log from now on
+     */
+    public void setFeedingLog(FeedingLog feedingLog) {
+        this.feedingLog = feedingLog;
+    }
+
+    // Adds a warehouse with its coordinates, warehouses named only by foods lines have no coordinates
+    public void addWarehouse(String name, double x, double y) {
+        warehouses.addWarehouse(name, x, y);
     }
 
     // Create methods for creating the objects specified in the given input files
+    // Animals of the built-in species, SpeciesTable.createAnimal creates them from a loaded table
     public static Animal createAnimal(String type, String name, int age) {
-        switch(type){
-            case "Lion":
-                return new Lion(name, age);
-            case "Elephant":
-                return new Elephant(name, age);
-            case "Penguin":
-                return new Penguin(name, age);
-            case "Chimpanzee":
-                return new Chimpanzee(name, age);
-            default:
-                break;
-        }
-        return null;
+        return SpeciesTable.defaults().createAnimal(type, name, age);
     }
     public static Person createPerson(String type, String name, int id) {
         switch(type){
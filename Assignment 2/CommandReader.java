@@ -0,0 +1,312 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class reads the commands file as raw bytes and runs every command on a CommandProcessor
+ * The action is recognized through a perfect-hash table keyed by its length, and person ids and
+ * meal counts are parsed straight from the bytes, so a regular command never goes through split or toLowerCase
+ * Anything the fast path does not fully understand is decoded to a String and handled by processCommand,
+ * so the output is the same as reading the file line by line
+ */
+
+public class CommandReader {
+    private static final int BUFFER_SIZE = 1 << 16;
+    static final String COMMAND_HEADER = "***********************************\n***Processing new Command***\n";
+
+    static final int FEED = 1;
+    static final int VISIT = 2;
+    private static final int LIST_FOOD = 3;
+
+    /*
+    Dispatch table indexed by (action length & 31). The lengths of the actions are all different,
+    so every slot holds at most one action and a lookup is a single comparison
+     */
+    private static final byte[][] ACTION_NAMES = new byte[32][];
+    private static final int[] ACTION_CODES = new int[32];
+
+    static {
+        register("feed animal", FEED);
+        register("animal visitation", VISIT);
+        register("list food stock", LIST_FOOD);
+    }
+
+    private static void register(String action, int code) {
+        int slot = action.length() & 31;
+        if (ACTION_NAMES[slot] != null) {
+            throw new IllegalStateException("Actions " + action + " and " + new String(ACTION_NAMES[slot], StandardCharsets.US_ASCII) + " share a dispatch slot");
+        }
+        ACTION_NAMES[slot] = action.getBytes(StandardCharsets.US_ASCII);
+        ACTION_CODES[slot] = code;
+    }
+
+    // Powers of ten that are exact doubles, dividing by them keeps the meal count correctly rounded
+    private static final double[] POWERS_OF_TEN = new double[16];
+
+    static {
+        POWERS_OF_TEN[0] = 1.0;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10.0;
+        }
+    }
+
+    private final CommandProcessor processor;
+    private final Charset charset;
+
+    /*
+    The charset is used for animal names and for the commands taking the String path,
+    it has to be ASCII compatible (like UTF-8 or ISO-8859-1) for the byte parsing to be correct
+     */
+    public CommandReader(CommandProcessor processor, Charset charset) {
+        this.processor = processor;
+        this.charset = charset;
+    }
+
+    public CommandReader(CommandProcessor processor) {
+        this(processor, Charset.defaultCharset());
+    }
+
+    /**
+     * Reads all commands from the stream and writes their output, every non-empty line is one command.
+     *
+     * @param input  the commands, the stream is not closed
+     * @param output the Writer the output is streamed to
+     * @throws IOException if reading or writing fails
+     */
+    public void processStream(InputStream input, Writer output) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int filled = 0;
+        int read;
+        while ((read = input.read(buffer, filled, buffer.length - filled)) != -1) {
+            filled += read;
+            int lineStart = processLines(buffer, filled, output);
+            // Keep the unfinished last line at the start of the buffer, growing it for very long lines
+            filled -= lineStart;
+            if (lineStart == 0 && filled == buffer.length) {
+                byte[] larger = new byte[buffer.length * 2];
+                System.arraycopy(buffer, 0, larger, 0, filled);
+                buffer = larger;
+            } else {
+                System.arraycopy(buffer, lineStart, buffer, 0, filled);
+            }
+        }
+        if (filled > 0) {
+            processLine(buffer, 0, filled, output);
+        }
+    }
+
+    /**
+     * Runs every complete line at the start of the buffer, a last line without line end is left unprocessed.
+     * Lines end with "\n", "\r\n" or a lone "\r", like for Scanner.nextLine.
+     *
+     * @param buffer the bytes holding the lines
+     * @param filled number of valid bytes in the buffer
+     * @param output the Writer the output is streamed to
+     * @return index after the last line end, where the unfinished line starts
+     * @throws IOException if writing the output fails
+     */
+    public int processLines(byte[] buffer, int filled, Writer output) throws IOException {
+        int lineStart = 0;
+        for (int i = 0; i < filled; i++) {
+            int lineEnd = lineEnd(buffer, i, filled);
+            if (lineEnd < 0) {
+                break;
+            }
+            if (lineEnd > 0) {
+                processLine(buffer, lineStart, i, output);
+                lineStart = i + 1;
+            }
+        }
+        return lineStart;
+    }
+
+    /*
+    Returns 1 if the byte at i ends a line, 0 if it does not and -1 if that is not known yet, which is the case
+    for a '\r' that is the last byte read: it ends the line alone unless a '\n' follows it.
+    The '\r' of a "\r\n" does not end the line, processLine drops it from the end of the line
+     */
+    static int lineEnd(byte[] buffer, int i, int filled) {
+        byte b = buffer[i];
+        if (b == '\n') {
+            return 1;
+        }
+        if (b != '\r') {
+            return 0;
+        }
+        if (i + 1 == filled) {
+            return -1;
+        }
+        return buffer[i + 1] == '\n' ? 0 : 1;
+    }
+
+    /**
+     * Runs one line of the commands file, skipping it if it is empty.
+     *
+     * @param buffer the bytes holding the line
+     * @param start  index of the first byte of the line
+     * @param end    index after the last byte of the line, without the line feed
+     * @param output the Writer the output is streamed to
+     * @return the outcome of the command, OK for skipped lines
+     * @throws IOException if writing the output fails
+     */
+    public ZooOutcome processLine(byte[] buffer, int start, int end, Writer output) throws IOException {
+        if (end > start && buffer[end - 1] == '\r') {
+            end--;
+        }
+        if (end == start) {
+            return ZooOutcome.OK;
+        }
+        output = processor.commandOutput(output);
+        output.write(COMMAND_HEADER);
+
+        int actionEnd = indexOf(buffer, start, end, (byte) ',');
+        int code = actionCode(buffer, start, actionEnd);
+        if (code != 0) {
+            ZooOutcome outcome = dispatch(code, buffer, actionEnd, end, output);
+            if (outcome != null) {
+                return outcome;
+            }
+        }
+        return processor.processCommand(new String(buffer, start, end - start, charset), output);
+    }
+
+    /*
+    Returns the code of the action from start to actionEnd (the first comma of the line or its end),
+    0 if it is not one of the actions of the fast path
+     */
+    static int actionCode(byte[] buffer, int start, int actionEnd) {
+        int slot = (actionEnd - start) & 31;
+        byte[] name = ACTION_NAMES[slot];
+        if (name != null && name.length == actionEnd - start && equalsIgnoreCase(buffer, start, name)) {
+            return ACTION_CODES[slot];
+        }
+        return 0;
+    }
+
+    /*
+    Runs an action from its arguments, returns null if the arguments are not in their plain form
+    (missing or extra fields, signs, leading zeros, exponents...) so the line takes the String path
+     */
+    private ZooOutcome dispatch(int code, byte[] buffer, int actionEnd, int end, Writer output) throws IOException {
+        switch (code) {
+            case LIST_FOOD:
+                if (actionEnd != end) {
+                    return null;
+                }
+                processor.countCommand();
+                return processor.listFood(output);
+            case VISIT: {
+                if (actionEnd == end) {
+                    return null;
+                }
+                int idEnd = indexOf(buffer, actionEnd + 1, end, (byte) ',');
+                int personId = parseId(buffer, actionEnd + 1, idEnd);
+                // Fields after the animal name are ignored by processCommand, leave them to it
+                if (personId < 0 || idEnd + 1 >= end || indexOf(buffer, idEnd + 1, end, (byte) ',') != end) {
+                    return null;
+                }
+                String animalName = new String(buffer, idEnd + 1, end - idEnd - 1, charset);
+                processor.countCommand();
+                return processor.visit(personId, null, animalName, output);
+            }
+            case FEED: {
+                if (actionEnd == end) {
+                    return null;
+                }
+                int idEnd = indexOf(buffer, actionEnd + 1, end, (byte) ',');
+                int personId = parseId(buffer, actionEnd + 1, idEnd);
+                if (personId < 0 || idEnd == end) {
+                    return null;
+                }
+                int nameEnd = indexOf(buffer, idEnd + 1, end, (byte) ',');
+                if (nameEnd == end) {
+                    return null;
+                }
+                double numOfMeals = parseMeals(buffer, nameEnd + 1, end);
+                if (Double.isNaN(numOfMeals)) {
+                    return null;
+                }
+                String animalName = new String(buffer, idEnd + 1, nameEnd - idEnd - 1, charset);
+                processor.countCommand();
+                return processor.feed(personId, null, animalName, numOfMeals, output);
+            }
+            default:
+                return null;
+        }
+    }
+
+    /*
+    Parses a non-negative id without sign or leading zeros, so printing it gives back the same text.
+    Returns -1 for anything else
+     */
+    static int parseId(byte[] buffer, int start, int end) {
+        int length = end - start;
+        if (length == 0 || length > 9 || (buffer[start] == '0' && length > 1)) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /*
+    Parses a meal count of the form digits[.digits] with at most 15 digits. All digits fit exactly
+    in a double and so does the power of ten, so the division gives the same correctly rounded value
+    as Double.parseDouble. Returns NaN for anything else
+     */
+    static double parseMeals(byte[] buffer, int start, int end) {
+        long digits = 0;
+        int digitCount = 0;
+        int fractionDigits = -1;
+        for (int i = start; i < end; i++) {
+            byte b = buffer[i];
+            if (b == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+                continue;
+            }
+            int digit = b - '0';
+            if (digit < 0 || digit > 9 || ++digitCount > 15) {
+                return Double.NaN;
+            }
+            digits = digits * 10 + digit;
+            if (fractionDigits >= 0) {
+                fractionDigits++;
+            }
+        }
+        if (digitCount == 0) {
+            return Double.NaN;
+        }
+        return fractionDigits > 0 ? digits / POWERS_OF_TEN[fractionDigits] : (double) digits;
+    }
+
+    static int indexOf(byte[] buffer, int start, int end, byte value) {
+        for (int i = start; i < end; i++) {
+            if (buffer[i] == value) {
+                return i;
+            }
+        }
+        return end;
+    }
+
+    // Compares ASCII letters ignoring case, the expected name is already in lower case
+    private static boolean equalsIgnoreCase(byte[] buffer, int start, byte[] lowerCaseName) {
+        for (int i = 0; i < lowerCaseName.length; i++) {
+            byte b = buffer[start + i];
+            if (b >= 'A' && b <= 'Z') {
+                b += 'a' - 'A';
+            }
+            if (b != lowerCaseName[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
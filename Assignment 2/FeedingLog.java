@@ -0,0 +1,377 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+/**
+ * This class is an on-disk columnar log of the feedings, one row per food type given to an animal:
+ * time (epoch milliseconds), animal id, person id, food type and grams
+ * Rows are stored in fixed-size blocks of BLOCK_ROWS rows, every block starts with its row count and its min/max time,
+ * min/max animal id and the set of food types in it, followed by one array per column
+ * The stats of all blocks are kept in memory, so a query only reads the blocks that can hold matching rows,
+ * and of those only the columns it needs
+ * Animal ids are positions in the animal dictionary, a text file next to the log with one name per line,
+ * so ids stay the same when the log is appended to by later runs
+ * The block being filled is kept in memory and written when it is full or the log is closed
+ */
+
+public class FeedingLog implements AutoCloseable {
+    public static final int BLOCK_ROWS = 4096;
+
+    private static final byte[] MAGIC = "ZOOFEED1".getBytes(StandardCharsets.US_ASCII);
+    private static final int FILE_HEADER = 16;
+    private static final int BLOCK_HEADER = 32;
+    private static final int TIMES = BLOCK_HEADER;
+    private static final int ANIMALS = TIMES + 8 * BLOCK_ROWS;
+    private static final int PERSONS = ANIMALS + 4 * BLOCK_ROWS;
+    private static final int FOOD_TYPES = PERSONS + 4 * BLOCK_ROWS;
+    private static final int GRAMS = FOOD_TYPES + BLOCK_ROWS;
+    private static final int BLOCK_BYTES = GRAMS + 8 * BLOCK_ROWS;
+
+    private final FileChannel channel;
+    private final LongSupplier clock;
+
+    private final Path dictionaryFile;
+    private final List<String> animalNames = new ArrayList<>();
+    private final HashMap<String, Integer> animalIds = new HashMap<>();
+    private BufferedWriter dictionary;
+
+    // Stats of the written blocks, the block being filled is not among them
+    private int blocks;
+    private long[] minTimes = new long[16];
+    private long[] maxTimes = new long[16];
+    private int[] minAnimals = new int[16];
+    private int[] maxAnimals = new int[16];
+    private int[] foodTypeMasks = new int[16];
+
+    // The block being filled
+    private final long[] times = new long[BLOCK_ROWS];
+    private final int[] animals = new int[BLOCK_ROWS];
+    private final int[] persons = new int[BLOCK_ROWS];
+    private final byte[] foodTypes = new byte[BLOCK_ROWS];
+    private final long[] grams = new long[BLOCK_ROWS];
+    private int rows;
+
+    /**
+     * Opens the log, creating it if it does not exist. A block that was not full is read back to be filled further.
+     *
+     * @param file  the log file, the animal dictionary is the same path with ".animals" appended
+     * @param clock gives the time of a feeding in epoch milliseconds
+     * @throws IOException if the log cannot be opened or is not a feeding log
+     */
+    public FeedingLog(String file, LongSupplier clock) throws IOException {
+        this.clock = clock;
+        this.channel = FileChannel.open(Paths.get(file), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.dictionaryFile = Paths.get(file + ".animals");
+        if (Files.exists(dictionaryFile)) {
+            try (BufferedReader reader = Files.newBufferedReader(dictionaryFile, StandardCharsets.UTF_8)) {
+                String name;
+                while ((name = reader.readLine()) != null) {
+                    animalIds.putIfAbsent(name, animalNames.size());
+                    animalNames.add(name);
+                }
+            }
+        }
+
+        long size = channel.size();
+        if (size == 0) {
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER);
+            header.put(MAGIC).putInt(BLOCK_ROWS).putInt(0).flip();
+            channel.write(header, 0);
+        } else {
+            ByteBuffer header = read(0, FILE_HEADER);
+            byte[] magic = new byte[MAGIC.length];
+            header.get(magic);
+            if (!Arrays.equals(magic, MAGIC) || header.getInt() != BLOCK_ROWS) {
+                throw new IOException(file + " is not a feeding log with blocks of " + BLOCK_ROWS + " rows");
+            }
+            int written = (int) ((size - FILE_HEADER + BLOCK_BYTES - 1) / BLOCK_BYTES);
+            for (int block = 0; block < written; block++) {
+                ByteBuffer stats = read(blockStart(block), BLOCK_HEADER);
+                int blockRows = stats.getInt();
+                if (block == written - 1 && blockRows < BLOCK_ROWS) {
+                    loadPartialBlock(block, blockRows);
+                } else {
+                    addStats(stats.getLong(), stats.getLong(), stats.getInt(), stats.getInt(), stats.getInt());
+                }
+            }
+        }
+    }
+
+    public FeedingLog(String file) throws IOException {
+        this(file, System::currentTimeMillis);
+    }
+
+    /*
+    Appends a feeding at the current time of the clock
+     */
+    public synchronized void append(String animalName, int personId, FoodType type, long amount) throws IOException {
+        times[rows] = clock.getAsLong();
+        animals[rows] = animalId(animalName);
+        persons[rows] = personId;
+        foodTypes[rows] = (byte) type.ordinal();
+        grams[rows] = amount;
+        rows++;
+        if (rows == BLOCK_ROWS) {
+            writeBlock();
+            rows = 0;
+        }
+    }
+
+    /*
+    Returns the number of rows in the log, a transaction keeps it to truncate the log back on a rollback
+     */
+    public synchronized long size() {
+        return (long) blocks * BLOCK_ROWS + rows;
+    }
+
+    /*
+    Drops the rows after the first count rows, the animal dictionary is kept
+     */
+    public synchronized void truncate(long count) throws IOException {
+        if (count >= size()) {
+            return;
+        }
+        int block = (int) (count / BLOCK_ROWS);
+        if (block < blocks) {
+            loadPartialBlock(block, BLOCK_ROWS);
+            blocks = block;
+        }
+        rows = (int) (count % BLOCK_ROWS);
+        channel.truncate(blockStart(block));
+    }
+
+    /**
+     * Runs the consumer on every row of the animal with a time in [from, to), in the order they were logged.
+     *
+     * @return the number of blocks that had to be read, the block being filled is not counted
+     */
+    public synchronized int history(String animalName, long from, long to, RowConsumer consumer) throws IOException {
+        Integer id = animalIds.get(animalName);
+        if (id == null) {
+            return 0;
+        }
+        int read = 0;
+        for (int block = 0; block < blocks; block++) {
+            if (maxTimes[block] < from || minTimes[block] >= to || id < minAnimals[block] || id > maxAnimals[block]) {
+                continue;
+            }
+            read++;
+            long[] blockTimes = readLongs(block, TIMES);
+            int[] blockAnimals = readInts(block, ANIMALS);
+            int[] blockPersons = null;
+            byte[] blockFoodTypes = null;
+            long[] blockGrams = null;
+            for (int row = 0; row < BLOCK_ROWS; row++) {
+                if (blockAnimals[row] == id && blockTimes[row] >= from && blockTimes[row] < to) {
+                    if (blockGrams == null) {
+                        blockPersons = readInts(block, PERSONS);
+                        blockFoodTypes = readBytes(block, FOOD_TYPES);
+                        blockGrams = readLongs(block, GRAMS);
+                    }
+                    consumer.accept(blockTimes[row], blockPersons[row], blockFoodTypes[row], blockGrams[row]);
+                }
+            }
+        }
+        for (int row = 0; row < rows; row++) {
+            if (animals[row] == id && times[row] >= from && times[row] < to) {
+                consumer.accept(times[row], persons[row], foodTypes[row], grams[row]);
+            }
+        }
+        return read;
+    }
+
+    /**
+     * Sums the grams of the food type given in [from, to).
+     *
+     * @param result receives the grams, the number of rows and the number of blocks read
+     */
+    public synchronized void totalFed(FoodType type, long from, long to, long[] result) throws IOException {
+        int mask = 1 << type.ordinal();
+        long total = 0;
+        long count = 0;
+        int read = 0;
+        for (int block = 0; block < blocks; block++) {
+            if (maxTimes[block] < from || minTimes[block] >= to || (foodTypeMasks[block] & mask) == 0) {
+                continue;
+            }
+            read++;
+            long[] blockTimes = readLongs(block, TIMES);
+            byte[] blockFoodTypes = readBytes(block, FOOD_TYPES);
+            long[] blockGrams = readLongs(block, GRAMS);
+            for (int row = 0; row < BLOCK_ROWS; row++) {
+                if (blockFoodTypes[row] == type.ordinal() && blockTimes[row] >= from && blockTimes[row] < to) {
+                    total += blockGrams[row];
+                    count++;
+                }
+            }
+        }
+        for (int row = 0; row < rows; row++) {
+            if (foodTypes[row] == type.ordinal() && times[row] >= from && times[row] < to) {
+                total += grams[row];
+                count++;
+            }
+        }
+        result[0] = total;
+        result[1] = count;
+        result[2] = read;
+    }
+
+    public synchronized int getBlockCount() {
+        return blocks;
+    }
+
+    /*
+    Writes the block being filled and the animal dictionary, so the log can be read by the next run
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (rows > 0) {
+            writeBlock();
+        }
+        if (dictionary != null) {
+            dictionary.close();
+        }
+        channel.close();
+    }
+
+    private int animalId(String name) throws IOException {
+        Integer id = animalIds.get(name);
+        if (id != null) {
+            return id;
+        }
+        if (dictionary == null) {
+            dictionary = Files.newBufferedWriter(dictionaryFile, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+        dictionary.write(name);
+        dictionary.newLine();
+        animalIds.put(name, animalNames.size());
+        animalNames.add(name);
+        return animalNames.size() - 1;
+    }
+
+    /*
+    Writes the block being filled at the position of the next block and adds its stats.
+    A block that is not full is written with its rows only, the rest of its columns are left as they are
+     */
+    private void writeBlock() throws IOException {
+        if (dictionary != null) {
+            dictionary.flush();
+        }
+        long minTime = Long.MAX_VALUE;
+        long maxTime = Long.MIN_VALUE;
+        int minAnimal = Integer.MAX_VALUE;
+        int maxAnimal = Integer.MIN_VALUE;
+        int mask = 0;
+        for (int row = 0; row < rows; row++) {
+            minTime = Math.min(minTime, times[row]);
+            maxTime = Math.max(maxTime, times[row]);
+            minAnimal = Math.min(minAnimal, animals[row]);
+            maxAnimal = Math.max(maxAnimal, animals[row]);
+            mask |= 1 << foodTypes[row];
+        }
+        long start = blockStart(blocks);
+        ByteBuffer buffer = ByteBuffer.allocate(BLOCK_BYTES);
+        buffer.putInt(rows).putLong(minTime).putLong(maxTime).putInt(minAnimal).putInt(maxAnimal).putInt(mask);
+        buffer.position(TIMES);
+        buffer.asLongBuffer().put(times, 0, rows);
+        buffer.position(ANIMALS);
+        buffer.asIntBuffer().put(animals, 0, rows);
+        buffer.position(PERSONS);
+        buffer.asIntBuffer().put(persons, 0, rows);
+        buffer.position(FOOD_TYPES);
+        buffer.put(foodTypes, 0, rows);
+        buffer.position(GRAMS);
+        buffer.asLongBuffer().put(grams, 0, rows);
+        buffer.position(0).limit(BLOCK_BYTES);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, start + buffer.position());
+        }
+        addStats(minTime, maxTime, minAnimal, maxAnimal, mask);
+    }
+
+    private void addStats(long minTime, long maxTime, int minAnimal, int maxAnimal, int mask) {
+        if (blocks == minTimes.length) {
+            int capacity = blocks * 2;
+            minTimes = Arrays.copyOf(minTimes, capacity);
+            maxTimes = Arrays.copyOf(maxTimes, capacity);
+            minAnimals = Arrays.copyOf(minAnimals, capacity);
+            maxAnimals = Arrays.copyOf(maxAnimals, capacity);
+            foodTypeMasks = Arrays.copyOf(foodTypeMasks, capacity);
+        }
+        minTimes[blocks] = minTime;
+        maxTimes[blocks] = maxTime;
+        minAnimals[blocks] = minAnimal;
+        maxAnimals[blocks] = maxAnimal;
+        foodTypeMasks[blocks] = mask;
+        blocks++;
+    }
+
+    // Reads the first blockRows rows of a block into the block being filled
+    private void loadPartialBlock(int block, int blockRows) throws IOException {
+        long[] blockTimes = readLongs(block, TIMES);
+        int[] blockAnimals = readInts(block, ANIMALS);
+        int[] blockPersons = readInts(block, PERSONS);
+        byte[] blockFoodTypes = readBytes(block, FOOD_TYPES);
+        long[] blockGrams = readLongs(block, GRAMS);
+        System.arraycopy(blockTimes, 0, times, 0, blockRows);
+        System.arraycopy(blockAnimals, 0, animals, 0, blockRows);
+        System.arraycopy(blockPersons, 0, persons, 0, blockRows);
+        System.arraycopy(blockFoodTypes, 0, foodTypes, 0, blockRows);
+        System.arraycopy(blockGrams, 0, grams, 0, blockRows);
+        rows = blockRows;
+    }
+
+    private static long blockStart(int block) {
+        return FILE_HEADER + (long) block * BLOCK_BYTES;
+    }
+
+    private long[] readLongs(int block, int column) throws IOException {
+        long[] values = new long[BLOCK_ROWS];
+        read(blockStart(block) + column, 8 * BLOCK_ROWS).asLongBuffer().get(values);
+        return values;
+    }
+
+    private int[] readInts(int block, int column) throws IOException {
+        int[] values = new int[BLOCK_ROWS];
+        read(blockStart(block) + column, 4 * BLOCK_ROWS).asIntBuffer().get(values);
+        return values;
+    }
+
+    private byte[] readBytes(int block, int column) throws IOException {
+        byte[] values = new byte[BLOCK_ROWS];
+        read(blockStart(block) + column, BLOCK_ROWS).get(values);
+        return values;
+    }
+
+    // Reads length bytes at the position, bytes after the end of the file are left zero
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                break;
+            }
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Receives the rows of a history query.
+     */
+    public interface RowConsumer {
+        void accept(long time, int personId, int foodType, long grams) throws IOException;
+    }
+}
@@ -1,28 +1,70 @@
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * This class represents the foods that our zoo can have in stock
  * Used abstract class for a better implementation of foods' own details
  * Methods consist of food type and amount getters and setters
+ * The amount is kept as whole grams in an AtomicLong, so several keepers can take food from the stock at the same time
+ * A food can belong to a named warehouse, null stands for the default one
  */
 
 public abstract class Foods {
+    // Returned by tryDebit when the stock does not have enough grams
+    public static final long NOT_ENOUGH = Long.MIN_VALUE;
+
     private String type;
-    private double amount;
+    private final AtomicLong grams;
+    private String warehouse;
 
     public Foods(String type, double amount) {
         this.type = type;
-        this.amount = amount;
+        this.grams = new AtomicLong(toGrams(amount));
     }
 
     public String getType() {
         return type;
     }
     public double getAmount() {
-        return amount;
+        return grams.get() / 1000.0;
     }
     public double setAmount(double amount) {
-        this.amount = amount;
+        grams.set(toGrams(amount));
         return amount;
     }
+    public long getGrams() {
+        return grams.get();
+    }
+    public String getWarehouse() {
+        return warehouse;
+    }
+    public void setWarehouse(String warehouse) {
+        this.warehouse = warehouse;
+    }
+
+    /*
+    Takes the given grams from the stock if there are enough of them and returns the grams left,
+    otherwise the stock is left as it is and NOT_ENOUGH is returned.
+    The check and the deduction are one compare-and-set, so two keepers can never both take the last portion
+     */
+    public long tryDebit(long amount) {
+        long current;
+        do {
+            current = grams.get();
+            if (current < amount) {
+                return NOT_ENOUGH;
+            }
+        } while (!grams.compareAndSet(current, current - amount));
+        return current - amount;
+    }
+
+    // Puts grams back into the stock, used to undo a debit
+    public void credit(long amount) {
+        grams.addAndGet(amount);
+    }
+
+    public static long toGrams(double amount) {
+        return Math.round(amount * 1000.0);
+    }
 }
 
 class Meat extends Foods {
@@ -43,3 +85,30 @@ class Fish extends Foods {
     }
 }
 
+/**
+ * The kinds of food the zoo keeps in stock, used to index the stock by ordinal instead of by name
+ */
+enum FoodType {
+    MEAT("Meat"), FISH("Fish"), PLANT("Plant");
+
+    private static final FoodType[] TYPES = values();
+    private final String name;
+
+    FoodType(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // Finds the food type by its name ignoring case, returns null for unknown names
+    public static FoodType fromName(String name) {
+        for (FoodType type : TYPES) {
+            if (type.name.equalsIgnoreCase(name)) {
+                return type;
+            }
+        }
+        return null;
+    }
+}
@@ -1,18 +1,31 @@
 import java.io.*;
-import java.util.*;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * This is the main class, connecting every other class together
- * Loading animals, persons and foods using CommandProcessor's methods
+ * Loading animals, persons and foods in parallel with ZooLoader and adding them to the CommandProcessor
  * Processes the commands from the input file and adds it on to the output
- * The writes the final output to the specified file
+ * The output is streamed to the specified file while the commands are processed
  */
 
 public class Main {
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 20;
+    private static final long NO_FOLLOW = -1;
+    private static final int SEQUENTIAL = 0;
 
     /**
      * This is the main method of the program
      * It works with the specification of files needed in the terminal(animals.txt, persons.txt, foods.txt, commands.txt, output.txt)
+     * With --follow the commands file is followed after its end and new lines are processed as they are appended,
+     * --follow=<seconds> stops following once the file did not grow for that many seconds
+     * --species=<file> reads the species from the file (see SpeciesTable) instead of using the built-in ones
+     * --warehouses=<file> reads warehouses with their coordinates, one name,x,y line each (see Warehouses)
+     * --feedlog=<file> appends every successful feeding to a columnar feeding log (see FeedingLog)
+     * --parallel runs the commands on all cores with the same output (see ParallelCommandRunner), --parallel=<n> on n threads
      *
      * @param args command line arguments for input and output files
      *
@@ -33,143 +46,239 @@ public class Main {
          *
          * @param fileName the path to the animals data file
          * @param processor the CommandProcessor instance to add animals to
-         * @param output the StringBuilder accumulating output messages
+         * @param output the Writer the output messages are streamed to
          * @throws IOException if an I/O error occurs reading the file
          */
 
-        String animalsFile = args[0];
-        String personsFile = args[1];
-        String foodsFile = args[2];
-        String commandsFile = args[3];
-        String outputFile = args[4];
+        List<String> files = new ArrayList<>();
+        long followMillis = NO_FOLLOW;
+        String speciesFile = null;
+        String warehousesFile = null;
+        String feedLogFile = null;
+        int parallelism = SEQUENTIAL;
+        for (String arg : args) {
+            if (arg.equals("--follow")) {
+                followMillis = 0;
+            } else if (arg.startsWith("--follow=")) {
+                followMillis = (long) (Double.parseDouble(arg.substring("--follow=".length())) * 1000);
+            } else if (arg.startsWith("--species=")) {
+                speciesFile = arg.substring("--species=".length());
+            } else if (arg.startsWith("--warehouses=")) {
+                warehousesFile = arg.substring("--warehouses=".length());
+            } else if (arg.startsWith("--feedlog=")) {
+                feedLogFile = arg.substring("--feedlog=".length());
+            } else if (arg.equals("--parallel")) {
+                parallelism = Math.min(Runtime.getRuntime().availableProcessors(), ParallelCommandRunner.MAX_PARALLELISM);
+            } else if (arg.startsWith("--parallel=")) {
+                parallelism = parseParallelism(arg.substring("--parallel=".length()));
+                if (parallelism < 1) {
+                    System.out.println("Usage: --parallel=<threads> needs a number of threads from 1 to "
+                            + ParallelCommandRunner.MAX_PARALLELISM + ": " + arg);
+                    return;
+                }
+            } else {
+                files.add(arg);
+            }
+        }
+
+        String animalsFile = files.get(0);
+        String personsFile = files.get(1);
+        String foodsFile = files.get(2);
+        String commandsFile = files.get(3);
+        String outputFile = files.get(4);
+
+        try {
+            SpeciesTable species = speciesFile == null ? SpeciesTable.defaults() : SpeciesTable.load(speciesFile);
+            run(animalsFile, personsFile, foodsFile, commandsFile, outputFile, ForkJoinPool.commonPool(), followMillis, species, warehousesFile, feedLogFile,
+                    parallelism);
+        } catch (IOException e) {
+            System.out.println("Error processing command: " + e.getMessage());
+        }
+    }
 
+    // Parses the thread count of --parallel=<threads>, -1 if it is not a number from 1 to MAX_PARALLELISM
+    private static int parseParallelism(String value) {
         try {
+            int threads = Integer.parseInt(value.trim());
+            return threads >= 1 && threads <= ParallelCommandRunner.MAX_PARALLELISM ? threads : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Runs the whole pipeline for one zoo: loads the three files into a new CommandProcessor,
+     * processes the commands and streams everything to the output file.
+     * Every call uses its own CommandProcessor, so several zoos can be run at the same time (see ZooBatchRunner)
+     *
+     * @param pool the pool the initialization files are loaded on
+     * @throws IOException if a file cannot be read or the output cannot be written
+     */
+    public static void run(String animalsFile, String personsFile, String foodsFile, String commandsFile,
+                           String outputFile, ForkJoinPool pool) throws IOException {
+        run(animalsFile, personsFile, foodsFile, commandsFile, outputFile, pool, NO_FOLLOW);
+    }
+
+    /*
+    Same as run, but with followMillis >= 0 the commands file is followed with a CommandFollower instead of read once:
+    0 follows until the thread is interrupted, more stops after the file did not grow for that many milliseconds
+     */
+    public static void run(String animalsFile, String personsFile, String foodsFile, String commandsFile,
+                           String outputFile, ForkJoinPool pool, long followMillis) throws IOException {
+        run(animalsFile, personsFile, foodsFile, commandsFile, outputFile, pool, followMillis, SpeciesTable.defaults(), null, null, SEQUENTIAL);
+    }
+
+    /*
+    Same as run with followMillis, the animals are created from the species of the given table.
+    warehousesFile is null when the foods are not spread over warehouses with coordinates,
+    feedLogFile is null when feedings are not logged. With a parallelism of 1 or more the commands file
+    is run on that many threads by a ParallelCommandRunner, SEQUENTIAL runs it on this thread (following is always sequential)
+     */
+    public static void run(String animalsFile, String personsFile, String foodsFile, String commandsFile,
+                           String outputFile, ForkJoinPool pool, long followMillis, SpeciesTable species,
+                           String warehousesFile, String feedLogFile, int parallelism) throws IOException {
+        // The three files are independent, so they are parsed in parallel (large files in chunks) while the output
+        // file is opened; their objects and lines are then merged in the same order as loading them one by one
+        ForkJoinTask<ZooLoader.Section<Animal>> animals = ZooLoader.load(pool, animalsFile, line -> parseAnimal(species, line), Main::describeAnimal);
+        ForkJoinTask<ZooLoader.Section<Person>> persons = ZooLoader.load(pool, personsFile, Main::parsePerson, Main::describePerson);
+        ForkJoinTask<ZooLoader.Section<Foods>> foods = ZooLoader.load(pool, foodsFile, Main::parseFood, Main::describeFood);
+
+        // Output is streamed to the file in large chunks instead of being collected in memory,
+        // so memory stays flat for long command files and a crash keeps everything written so far
+        try (BufferedWriter output = new BufferedWriter(new FileWriter(outputFile), OUTPUT_BUFFER_SIZE)) {
             CommandProcessor processor = new CommandProcessor();
 
-            StringBuilder output = new StringBuilder();
 
             output.append("***********************************\n")
                     .append("***Initializing Animal information***\n");
-            loadAnimals(animalsFile, processor, output);
+            ZooLoader.await(animals).mergeInto(processor::addAnimal, output);
 
             output.append("***********************************\n")
                     .append("***Initializing Visitor and Personnel information***\n");
-            loadPersons(personsFile, processor, output);
+            ZooLoader.await(persons).mergeInto(processor::addPerson, output);
+
+            if (warehousesFile != null) {
+                output.append("***********************************\n")
+                        .append("***Initializing Warehouses***\n");
+                loadWarehouses(warehousesFile, processor, output);
+            }
 
             output.append("***********************************\n")
                     .append("***Initializing Food Stock***\n");
-            loadFoods(foodsFile, processor, output);
+            ZooLoader.await(foods).mergeInto(processor::addFood, output);
 
 
-            processCommands(commandsFile, processor, output);
+            FeedingLog feedingLog = feedLogFile == null ? null : new FeedingLog(feedLogFile);
+            try {
+                processor.setFeedingLog(feedingLog);
+                if (followMillis == NO_FOLLOW) {
+                    processCommands(commandsFile, processor, output, parallelism);
+                } else {
+                    new CommandFollower(new CommandReader(processor), Paths.get(commandsFile)).follow(output, followMillis);
+                }
+                processor.endCommands(output);
+            } finally {
+                if (feedingLog != null) {
+                    feedingLog.close();
+                }
+            }
+        }
+    }
 
-            writeOutput(outputFile, output.toString());
+    /*
+    Parsers and output lines of the initialization files, one object per line
+    An animal line is type,name,age[,x,y], a person line is type,name,id and a food line is type,amount[,warehouse]
+     */
+    static Animal parseAnimal(String line) {
+        return parseAnimal(SpeciesTable.defaults(), line);
+    }
 
-        } catch (IOException e) {
-            System.out.println("Error processing command: " + e.getMessage());
+    static Animal parseAnimal(SpeciesTable species, String line) {
+        String[] tokens = line.split(",");
+        String type = tokens[0];
+        String name = tokens[1];
+        int age = Integer.parseInt(tokens[2]);
+        Animal animal = species.createAnimal(type, name, age);
+        if (animal != null && tokens.length >= 5) {
+            animal.setLocation(Double.parseDouble(tokens[3]), Double.parseDouble(tokens[4]));
         }
+        return animal;
     }
 
-    private static void loadAnimals(String fileName, CommandProcessor processor, StringBuilder output) throws IOException {
-        /*
-          Loads animals data from the specified file
-          Creates animal objects using CommandProcessor and adds them to it
-         */
-        try (Scanner scanner = new Scanner(new FileReader(fileName))) {
-            while (scanner.hasNextLine()) {
-                String line = scanner.nextLine();
-                if (!line.isEmpty()) {
-                    String[] tokens = line.split(",");
-                    String type = tokens[0];
-                    String name = tokens[1];
-                    int age = Integer.parseInt(tokens[2]);
+    static String describeAnimal(Animal animal) {
+        return "Added new " + animal.getType() + " with name " + animal.getName() + " aged " + animal.getAge() + ".";
+    }
 
-                    Animal animal = CommandProcessor.createAnimal(type, name, age);
-                    processor.addAnimal(animal);
+    static Person parsePerson(String line) {
+        String[] tokens = line.split(",");
+        String type = tokens[0];
+        String name = tokens[1];
+        int id = Integer.parseInt(tokens[2]);
+        return CommandProcessor.createPerson(type, name, id);
+    }
 
-                    output.append("Added new " + animal.getType() + " with name " + animal.getName() + " aged " + animal.getAge() + ".\n");
+    static String describePerson(Person person) {
+        return "Added new " + person.getType() + " with id " + person.getId() + " and name " + person.getName() + ".";
+    }
 
-                }
-            }
+    static Foods parseFood(String line) {
+        String[] tokens = line.split(",");
+        String type = tokens[0];
+        double amount = Double.parseDouble(tokens[1]);
+        Foods food = CommandProcessor.createFood(type, amount);
+        if (food != null && tokens.length >= 3) {
+            food.setWarehouse(tokens[2].trim());
         }
+        return food;
     }
 
-    private static void loadPersons(String fileName, CommandProcessor processor, StringBuilder output) throws IOException {
-        /*
-        Loads persons from the specified file
-        Creates person objects using CommandProcessor and adds them to it
-         */
-        try (Scanner scanner = new Scanner(new FileReader(fileName))) {
-            while (scanner.hasNextLine()) {
-                String line = scanner.nextLine();
-                if (!line.isEmpty()) {
-                    String[] tokens = line.split(",");
-                    String type = tokens[0];
-                    String name = tokens[1];
-                    int id = Integer.parseInt(tokens[2]);
-
-                    Person person = CommandProcessor.createPerson(type, name, id);
-                    processor.addPerson(person);
-
-                    output.append("Added new " + person.getType() + " with id " + person.getId() + " and name " + person.getName() + ".\n");
-                }
-            }
-        }
+    static String describeFood(Foods foods) {
+        String text = "There are " + CommandProcessor.formatAmount(foods.getAmount()) + " kg of " + foods.getType() + " in stock";
+        return foods.getWarehouse() == null ? text : text + " at " + foods.getWarehouse();
     }
 
-    private static void loadFoods(String fileName, CommandProcessor processor, StringBuilder output) throws IOException {
+    private static void loadWarehouses(String fileName, CommandProcessor processor, Writer output) throws IOException {
         /*
-        Loads food stock from the specified file
-        Creates food objects using CommandProcessor and adds them to it
+        Reads the warehouses file, every line is name,x,y
          */
-        try (Scanner scanner = new Scanner(new FileReader(fileName))) {
-            while (scanner.hasNextLine()) {
-                String line = scanner.nextLine();
-                if (!line.isEmpty()) {
-                    String[] tokens = line.split(",");
-                    String type = tokens[0];
-                    double amount = Double.parseDouble(tokens[1]);
-
-                    Foods foods = CommandProcessor.createFood(type, amount);
-                    processor.addFood(foods);
-
-                    output.append("There are ")
-                            .append(String.format("%.3f", foods.getAmount()))
-                            .append(" kg of ")
-                            .append(foods.getType())
-                            .append(" in stock\n");
+        try (BufferedReader reader = new BufferedReader(new FileReader(fileName))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] tokens = line.split(",");
+                try {
+                    if (tokens.length != 3) {
+                        throw new NumberFormatException("should be name,x,y");
+                    }
+                    double x = Double.parseDouble(tokens[1].trim());
+                    double y = Double.parseDouble(tokens[2].trim());
+                    processor.addWarehouse(tokens[0].trim(), x, y);
+                    output.append("Added warehouse " + tokens[0].trim() + " at (" + x + ", " + y + ").\n");
+                } catch (NumberFormatException e) {
+                    throw new IOException("Line " + lineNumber + " of " + fileName + ": " + e.getMessage() + ": " + line);
                 }
             }
         }
     }
 
-    private static void processCommands(String fileName, CommandProcessor processor, StringBuilder output) throws IOException {
+    private static void processCommands(String fileName, CommandProcessor processor, Writer output, int parallelism) throws IOException {
         /*
         General method for processing commands, which reads the commands from the specified file
-        with the help of CommandProcessor
+        as bytes with CommandReader (or a ParallelCommandRunner) and runs them on the CommandProcessor
          */
-        try (Scanner scanner = new Scanner(new FileReader(fileName))) {
-            while (scanner.hasNextLine()) {
-                String line = scanner.nextLine();
-                if (!line.isEmpty()) {
-                    output.append("***********************************\n")
-                           .append("***Processing new Command***\n");
-                    try {
-                        processor.processCommand(line, output);
-                    } catch (ZooException e) {
-                        output.append(e.getMessage()).append("\n");
-                    }
+        try (InputStream input = new FileInputStream(fileName)) {
+            // Failures write their own error message, so no exception handling is needed here
+            if (parallelism == SEQUENTIAL) {
+                new CommandReader(processor).processStream(input, output);
+            } else {
+                try (ParallelCommandRunner runner = new ParallelCommandRunner(processor, parallelism)) {
+                    runner.processStream(input, output);
                 }
             }
         }
     }
-
-    private static void writeOutput(String outputFile, String output) throws IOException {
-        /*
-        Writes the final output to the specified output file
-         */
-        try(BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile))){
-            writer.write(output);
-        }
-    }
 }
@@ -0,0 +1,366 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This class runs the commands of a commands file on several threads, with the same output as CommandReader
+ * Feedings and visits of single animals are partitioned by animal name over lanes, one thread each, so the commands
+ * of one animal stay in input order. Feedings of different lanes only wait for each other through the StockArbiter
+ * when they eat the same food, every other command runs in parallel
+ * Every command writes to its own slot of its lane's output, the slots are written to the output in input order
+ * Cleanings and feeding log entries are also applied then, in input order, so the cleaning schedule and the log
+ * come out as in a sequential run
+ * All other commands (listings, rounds, alerts, forecasts, transactions...) and everything while a transaction is open
+ * run one by one on the reading thread once the commands before them are done, like with CommandReader
+ */
+
+public class ParallelCommandRunner implements AutoCloseable {
+    private static final int BUFFER_SIZE = 1 << 20;
+    // Commands run in one go before their output is written, bounds the memory of the slots
+    private static final int MAX_PENDING = 1 << 14;
+    private static final int FOOD_TYPES = FoodType.values().length;
+    public static final int MAX_PARALLELISM = Byte.MAX_VALUE;
+
+    private final CommandProcessor processor;
+    private final CommandReader reader;
+    private final Charset charset;
+    private final StockArbiter arbiter = new StockArbiter();
+    private final Lane[] lanes;
+    private final ExecutorService threads;
+
+    // The commands read but not run yet, in input order
+    private int pending;
+    private int[] codes = new int[64];
+    private int[] personIds = new int[64];
+    private String[] animalNames = new String[64];
+    private double[] meals = new double[64];
+    private long[] tickets = new long[64 * FOOD_TYPES];
+    private int[] cleanedRows = new int[64];
+    private ZooOutcome[] outcomes = new ZooOutcome[64];
+    private byte[] laneOf = new byte[64];
+    // Where the output of every pending command is in its lane's slots
+    private int[] slotStarts = new int[64];
+    private int[] slotEnds = new int[64];
+
+    /*
+    Creates a runner with the given number of lanes, at most MAX_PARALLELISM. The charset is used like in CommandReader
+     */
+    public ParallelCommandRunner(CommandProcessor processor, int parallelism, Charset charset) {
+        if (parallelism < 1 || parallelism > MAX_PARALLELISM) {
+            throw new IllegalArgumentException("Parallelism must be between 1 and " + MAX_PARALLELISM + ": " + parallelism);
+        }
+        this.processor = processor;
+        this.reader = new CommandReader(processor, charset);
+        this.charset = charset;
+        this.lanes = new Lane[parallelism];
+        for (int i = 0; i < parallelism; i++) {
+            lanes[i] = new Lane();
+        }
+        this.threads = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "zoo-lane");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public ParallelCommandRunner(CommandProcessor processor, int parallelism) {
+        this(processor, parallelism, Charset.defaultCharset());
+    }
+
+    /**
+     * Reads all commands from the stream and writes their output, every non-empty line is one command.
+     *
+     * @param input  the commands, the stream is not closed
+     * @param output the Writer the output is written to, in the order of the commands
+     * @throws IOException if reading or writing fails, after a failure the runner cannot be used again
+     */
+    public void processStream(InputStream input, Writer output) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int filled = 0;
+        int read;
+        while ((read = input.read(buffer, filled, buffer.length - filled)) != -1) {
+            filled += read;
+            int lineStart = 0;
+            for (int i = 0; i < filled; i++) {
+                int lineEnd = CommandReader.lineEnd(buffer, i, filled);
+                if (lineEnd < 0) {
+                    break;
+                }
+                if (lineEnd > 0) {
+                    processLine(buffer, lineStart, i, output);
+                    lineStart = i + 1;
+                }
+            }
+            // Pending commands do not refer to the buffer, so it can be reused right away
+            filled -= lineStart;
+            if (lineStart == 0 && filled == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            } else {
+                System.arraycopy(buffer, lineStart, buffer, 0, filled);
+            }
+        }
+        if (filled > 0) {
+            processLine(buffer, 0, filled, output);
+        }
+        runPending(output);
+    }
+
+    private void processLine(byte[] buffer, int start, int end, Writer output) throws IOException {
+        /*
+        Queues a plain feeding or visit for its lane, anything else first runs what is queued and then itself
+         */
+        if (end > start && buffer[end - 1] == '\r') {
+            end--;
+        }
+        if (end == start) {
+            return;
+        }
+        if (!processor.inTransaction() && queue(buffer, start, end)) {
+            if (pending == MAX_PENDING) {
+                runPending(output);
+            }
+            return;
+        }
+        runPending(output);
+        reader.processLine(buffer, start, end, output);
+    }
+
+    private boolean queue(byte[] buffer, int start, int end) {
+        /*
+        Parses the line like CommandReader does for its fast path, returns false for any line CommandReader
+        would not run through it. A feeding gets its tickets here, so tickets are given out in input order
+         */
+        int actionEnd = CommandReader.indexOf(buffer, start, end, (byte) ',');
+        int code = CommandReader.actionCode(buffer, start, actionEnd);
+        if ((code != CommandReader.FEED && code != CommandReader.VISIT) || actionEnd == end) {
+            return false;
+        }
+        int idEnd = CommandReader.indexOf(buffer, actionEnd + 1, end, (byte) ',');
+        int personId = CommandReader.parseId(buffer, actionEnd + 1, idEnd);
+        if (personId < 0 || idEnd == end) {
+            return false;
+        }
+        int nameEnd = CommandReader.indexOf(buffer, idEnd + 1, end, (byte) ',');
+        double numOfMeals = 0;
+        if (code == CommandReader.VISIT) {
+            if (idEnd + 1 >= end || nameEnd != end) {
+                return false;
+            }
+        } else {
+            if (nameEnd == end) {
+                return false;
+            }
+            numOfMeals = CommandReader.parseMeals(buffer, nameEnd + 1, end);
+            if (Double.isNaN(numOfMeals)) {
+                return false;
+            }
+        }
+
+        ensureCapacity();
+        String animalName = new String(buffer, idEnd + 1, nameEnd - idEnd - 1, charset);
+        codes[pending] = code;
+        personIds[pending] = personId;
+        animalNames[pending] = animalName;
+        meals[pending] = numOfMeals;
+        laneOf[pending] = (byte) Math.floorMod(animalName.hashCode(), lanes.length);
+        Arrays.fill(tickets, pending * FOOD_TYPES, (pending + 1) * FOOD_TYPES, StockTurn.NO_TICKET);
+        cleanedRows[pending] = code == CommandReader.VISIT ? processor.cleanedRow(personId, animalName) : -1;
+        FoodType[] types = code == CommandReader.FEED ? processor.stockTypes(personId, animalName) : null;
+        if (types != null) {
+            for (FoodType type : types) {
+                tickets[pending * FOOD_TYPES + type.ordinal()] = arbiter.issue(type);
+            }
+        }
+        pending++;
+        return true;
+    }
+
+    private void runPending(Writer output) throws IOException {
+        /*
+        Runs the queued commands on their lanes, then writes their output and applies their cleanings
+        and feeding log entries in input order
+         */
+        if (pending == 0) {
+            return;
+        }
+        long commandsBefore = processor.getCommandCount();
+        List<Lane> used = new ArrayList<>();
+        for (int i = 0; i < pending; i++) {
+            Lane lane = lanes[laneOf[i]];
+            if (lane.size == 0) {
+                lane.commandsBefore = commandsBefore;
+                used.add(lane);
+            }
+            lane.add(i);
+        }
+        // A failing lane aborts the arbiter so the others stop too, its failure is the one reported, not their cancellations
+        Throwable failure = null;
+        try {
+            for (Future<Void> done : threads.invokeAll(used)) {
+                try {
+                    done.get();
+                } catch (ExecutionException e) {
+                    if (failure == null || failure instanceof CancellationException) {
+                        failure = e.getCause();
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            arbiter.abort();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while running commands", e);
+        }
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        }
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        if (failure != null) {
+            throw new IOException(failure);
+        }
+
+        for (int i = 0; i < pending; i++) {
+            Lane lane = lanes[laneOf[i]];
+            output.write(lane.slots.chars, slotStarts[i], slotEnds[i] - slotStarts[i]);
+            if (codes[i] == CommandReader.FEED && outcomes[i].isSuccess()) {
+                processor.logFeeding(personIds[i], animalNames[i], meals[i]);
+            } else if (cleanedRows[i] >= 0) {
+                processor.markCleaned(cleanedRows[i]);
+            }
+        }
+        processor.countCommands(pending);
+        for (Lane lane : used) {
+            lane.size = 0;
+            lane.slots.length = 0;
+        }
+        Arrays.fill(animalNames, 0, pending, null);
+        Arrays.fill(outcomes, 0, pending, null);
+        pending = 0;
+    }
+
+    private void ensureCapacity() {
+        if (pending == codes.length) {
+            int capacity = pending * 2;
+            codes = Arrays.copyOf(codes, capacity);
+            personIds = Arrays.copyOf(personIds, capacity);
+            animalNames = Arrays.copyOf(animalNames, capacity);
+            meals = Arrays.copyOf(meals, capacity);
+            tickets = Arrays.copyOf(tickets, capacity * FOOD_TYPES);
+            cleanedRows = Arrays.copyOf(cleanedRows, capacity);
+            outcomes = Arrays.copyOf(outcomes, capacity);
+            laneOf = Arrays.copyOf(laneOf, capacity);
+            slotStarts = Arrays.copyOf(slotStarts, capacity);
+            slotEnds = Arrays.copyOf(slotEnds, capacity);
+        }
+    }
+
+    @Override
+    public void close() {
+        threads.shutdownNow();
+    }
+
+    /*
+    One lane, the pending commands of its animals in input order and the slots they write to.
+    Every lane that has commands runs on its own thread, which the StockArbiter needs to never wait forever
+     */
+    private class Lane implements Callable<Void> {
+        final SlotWriter slots = new SlotWriter();
+        final StockTurn turn = new StockTurn(arbiter);
+        int[] commands = new int[64];
+        int size;
+        long commandsBefore;
+
+        void add(int command) {
+            if (size == commands.length) {
+                commands = Arrays.copyOf(commands, size * 2);
+            }
+            commands[size++] = command;
+        }
+
+        @Override
+        public Void call() throws IOException {
+            try {
+                runCommands();
+            } catch (IOException | RuntimeException | Error e) {
+                // The tickets of this lane's later feedings are never passed on, stop the lanes waiting for them
+                arbiter.abort();
+                throw e;
+            }
+            return null;
+        }
+
+        private void runCommands() throws IOException {
+            for (int n = 0; n < size; n++) {
+                int i = commands[n];
+                slotStarts[i] = slots.length;
+                slots.write(CommandReader.COMMAND_HEADER);
+                if (codes[i] == CommandReader.FEED) {
+                    for (int type = 0; type < FOOD_TYPES; type++) {
+                        turn.setTicket(type, tickets[i * FOOD_TYPES + type]);
+                    }
+                    outcomes[i] = processor.feed(personIds[i], null, animalNames[i], meals[i], commandsBefore + i + 1, turn, slots);
+                    turn.finish();
+                } else {
+                    outcomes[i] = processor.visit(personIds[i], null, animalNames[i], false, slots);
+                }
+                slotEnds[i] = slots.length;
+            }
+        }
+    }
+
+    /*
+    The output slots of a lane, one growing char array without any locking
+     */
+    private static class SlotWriter extends Writer {
+        char[] chars = new char[1 << 16];
+        int length;
+
+        private void ensureCapacity(int more) {
+            if (length + more > chars.length) {
+                chars = Arrays.copyOf(chars, Math.max(chars.length * 2, length + more));
+            }
+        }
+
+        @Override
+        public void write(int c) {
+            ensureCapacity(1);
+            chars[length++] = (char) c;
+        }
+
+        @Override
+        public void write(char[] buffer, int offset, int count) {
+            ensureCapacity(count);
+            System.arraycopy(buffer, offset, chars, length, count);
+            length += count;
+        }
+
+        @Override
+        public void write(String text, int offset, int count) {
+            ensureCapacity(count);
+            text.getChars(offset, offset + count, chars, length);
+            length += count;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
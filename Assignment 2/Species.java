@@ -0,0 +1,145 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class is the handler of one species, compiled from a line of the species table
+ * It knows the food types the species eats, how its meal size changes with age, how often and how long
+ * its habitat is cleaned and the messages written when one of its animals is fed or its habitat is cleaned
+ * Species are identified by their code, the position of their line in the SpeciesTable
+ */
+
+public class Species {
+    private final int code;
+    private final String name;
+    private final String foodTypeName;
+    private final FoodType[] foods;
+    private final int baseAge;
+    private final double baseMealSize;
+    private final double adjustmentPerAge;
+    private final long cleaningIntervalMinutes;
+    private final long cleaningMinutes;
+    private final MessageTemplate feedingMessage;
+    private final MessageTemplate cleaningMessage;
+
+    Species(int code, String name, String foodTypeName, FoodType[] foods, int baseAge, double baseMealSize,
+            double adjustmentPerAge, long cleaningIntervalMinutes, long cleaningMinutes,
+            MessageTemplate feedingMessage, MessageTemplate cleaningMessage) {
+        this.code = code;
+        this.name = name;
+        this.foodTypeName = foodTypeName;
+        this.foods = foods;
+        this.baseAge = baseAge;
+        this.baseMealSize = baseMealSize;
+        this.adjustmentPerAge = adjustmentPerAge;
+        this.cleaningIntervalMinutes = cleaningIntervalMinutes;
+        this.cleaningMinutes = cleaningMinutes;
+        this.feedingMessage = feedingMessage;
+        this.cleaningMessage = cleaningMessage;
+    }
+
+    /*
+    Returns the food an animal of the given age gets per meal of each of the species' food types,
+    a species eating several food types gets its meal split evenly between them
+     */
+    public double mealSize(int age) {
+        return (baseMealSize + (age - baseAge) * adjustmentPerAge) / foods.length;
+    }
+
+    /*
+    Writes the line telling that the animal has been given the amount of every food type, nothing if the species has no feeding message
+     */
+    public void writeFeeding(Writer output, String animalName, String kgs) throws IOException {
+        feedingMessage.writeLine(output, animalName, kgs);
+    }
+
+    /*
+    Writes the line describing the cleaning of the animal's habitat, nothing if the species has no cleaning message
+     */
+    public void writeCleaning(Writer output, String animalName) throws IOException {
+        cleaningMessage.writeLine(output, animalName, "");
+    }
+
+    // Getter Methods
+    public int getCode() {
+        return code;
+    }
+    public String getName() {
+        return name;
+    }
+    public String getFoodTypeName() {
+        return foodTypeName;
+    }
+    public FoodType[] getFoods() {
+        return foods;
+    }
+    public long getCleaningIntervalMinutes() {
+        return cleaningIntervalMinutes;
+    }
+    public long getCleaningMinutes() {
+        return cleaningMinutes;
+    }
+}
+
+/**
+ * A message with {name} and {kgs} placeholders, split into its literal parts once when the species table is loaded
+ * so writing it only appends the parts and the values
+ */
+class MessageTemplate {
+    private static final int NAME = 0;
+    private static final int KGS = 1;
+    private static final String[] PLACEHOLDERS = {"{name}", "{kgs}"};
+
+    // literals[i] is written before placeholders[i], the last literal after the last placeholder
+    private final String[] literals;
+    private final int[] placeholders;
+
+    private MessageTemplate(String[] literals, int[] placeholders) {
+        this.literals = literals;
+        this.placeholders = placeholders;
+    }
+
+    /*
+    Compiles the template, an unknown placeholder is an IllegalArgumentException
+     */
+    static MessageTemplate compile(String template) {
+        List<String> literals = new ArrayList<>();
+        List<Integer> placeholders = new ArrayList<>();
+        int start = 0;
+        int open;
+        while ((open = template.indexOf('{', start)) >= 0) {
+            int placeholder = -1;
+            for (int i = 0; i < PLACEHOLDERS.length; i++) {
+                if (template.startsWith(PLACEHOLDERS[i], open)) {
+                    placeholder = i;
+                }
+            }
+            if (placeholder < 0) {
+                throw new IllegalArgumentException("Unknown placeholder in message: " + template.substring(open));
+            }
+            literals.add(template.substring(start, open));
+            placeholders.add(placeholder);
+            start = open + PLACEHOLDERS[placeholder].length();
+        }
+        literals.add(template.substring(start));
+        int[] codes = new int[placeholders.size()];
+        for (int i = 0; i < codes.length; i++) {
+            codes[i] = placeholders.get(i);
+        }
+        return new MessageTemplate(literals.toArray(new String[0]), codes);
+    }
+
+    /*
+    Writes the message followed by a line feed, an empty template writes nothing
+     */
+    void writeLine(Writer output, String name, String kgs) throws IOException {
+        if (placeholders.length == 0 && literals[0].isEmpty()) {
+            return;
+        }
+        for (int i = 0; i < placeholders.length; i++) {
+            output.append(literals[i]).append(placeholders[i] == NAME ? name : kgs);
+        }
+        output.append(literals[placeholders.length]).append('\n');
+    }
+}
@@ -0,0 +1,146 @@
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * This class holds the species the zoo knows, read from a species file or the built-in default table
+ * Every non-empty line that does not start with # is one species:
+ * name,foods,baseAge,baseMealSize,adjustmentPerAge,cleaningIntervalMinutes,cleaningMinutes,feedingMessage,cleaningMessage
+ * foods are food type names joined with " and ", the messages can use {name} and {kgs} and only the cleaning message may contain commas
+ * Every line is compiled into a Species handler when the table is loaded, the species code is its position in the table
+ */
+
+public class SpeciesTable {
+    private static final String[] DEFAULT_LINES = {
+            "Lion,Meat,5,5.0,0.05,1440,60,{name} has been given {kgs} kgs of meat,"
+                    + "Cleaning {name}’s habitat: Removing bones and refreshing sand.",
+            "Elephant,Plant,20,10.0,0.015,720,120,{name} has been given {kgs} kgs assorted fruits and hay,"
+                    + "Cleaning {name}’s habitat: Washing the water area.",
+            "Penguin,Fish,4,3.0,0.040,480,90,{name} has been given {kgs} kgs of various kinds of fish,"
+                    + "Cleaning {name}’s habitat: Replenishing ice and scrubbing walls.",
+            "Chimpanzee,Meat and Plant,10,6.0,0.025,960,45,{name} has been given {kgs} kgs of meat and {kgs} kgs of leaves,"
+                    + "Cleaning {name}’s habitat: Sweeping the enclosure and replacing branches."
+    };
+    private static final int FIELDS = 9;
+
+    private static final SpeciesTable DEFAULTS = createDefaults();
+
+    private final List<Species> species = new ArrayList<>();
+    private final HashMap<String, Species> speciesByName = new HashMap<>();
+
+    private SpeciesTable() {
+    }
+
+    /*
+    Returns the built-in table with the zoo's original species
+     */
+    public static SpeciesTable defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * Reads and compiles the species file, which is read as UTF-8.
+     *
+     * @param fileName the species file
+     * @return the table of the file's species
+     * @throws IOException if the file cannot be read or a line is malformed
+     */
+    public static SpeciesTable load(String fileName) throws IOException {
+        SpeciesTable table = new SpeciesTable();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(fileName), StandardCharsets.UTF_8))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                try {
+                    table.add(line);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Line " + lineNumber + " of " + fileName + ": " + e.getMessage());
+                }
+            }
+        }
+        return table;
+    }
+
+    private static SpeciesTable createDefaults() {
+        SpeciesTable table = new SpeciesTable();
+        for (String line : DEFAULT_LINES) {
+            table.add(line);
+        }
+        return table;
+    }
+
+    /*
+    Compiles a line into a Species, a malformed line or a negative meal size, cleaning interval or duration
+    is an IllegalArgumentException (NumberFormatException for the numbers), as is an interval of zero
+     */
+    private void add(String line) {
+        String[] tokens = line.split(",", FIELDS);
+        if (tokens.length != FIELDS) {
+            throw new IllegalArgumentException("should be name,foods,baseAge,baseMealSize,adjustmentPerAge,"
+                    + "cleaningIntervalMinutes,cleaningMinutes,feedingMessage,cleaningMessage: " + line);
+        }
+        String name = tokens[0].trim();
+        if (speciesByName.containsKey(name)) {
+            throw new IllegalArgumentException("Species " + name + " is defined twice");
+        }
+        String[] foodNames = tokens[1].split(" and ");
+        FoodType[] foods = new FoodType[foodNames.length];
+        for (int i = 0; i < foodNames.length; i++) {
+            foods[i] = FoodType.fromName(foodNames[i].trim());
+            if (foods[i] == null) {
+                throw new IllegalArgumentException("Unknown food type " + foodNames[i] + " for " + name);
+            }
+        }
+        double baseMealSize = Double.parseDouble(tokens[3].trim());
+        long cleaningIntervalMinutes = Long.parseLong(tokens[5].trim());
+        long cleaningMinutes = Long.parseLong(tokens[6].trim());
+        // A habitat that is never due later after a cleaning would keep the scheduler on it forever
+        if (!(baseMealSize >= 0)) {
+            throw new IllegalArgumentException("Base meal size of " + name + " should not be negative: " + tokens[3].trim());
+        }
+        if (cleaningIntervalMinutes <= 0) {
+            throw new IllegalArgumentException("Cleaning interval of " + name + " should be positive: " + cleaningIntervalMinutes);
+        }
+        if (cleaningMinutes < 0) {
+            throw new IllegalArgumentException("Cleaning duration of " + name + " should not be negative: " + cleaningMinutes);
+        }
+        Species added = new Species(species.size(), name, tokens[1].trim(), foods,
+                Integer.parseInt(tokens[2].trim()), baseMealSize, Double.parseDouble(tokens[4].trim()),
+                cleaningIntervalMinutes, cleaningMinutes,
+                MessageTemplate.compile(tokens[7]), MessageTemplate.compile(tokens[8]));
+        species.add(added);
+        speciesByName.put(name, added);
+    }
+
+    /*
+    Creates an animal of the species with the given name, null if there is no such species
+     */
+    public Animal createAnimal(String type, String name, int age) {
+        Species animalSpecies = speciesByName.get(type);
+        return animalSpecies == null ? null : new Animal(animalSpecies, name, age);
+    }
+
+    /*
+    Returns the species with the given name, null if there is none
+     */
+    public Species find(String name) {
+        return speciesByName.get(name);
+    }
+
+    public Species get(int code) {
+        return species.get(code);
+    }
+
+    public int size() {
+        return species.size();
+    }
+}
@@ -0,0 +1,109 @@
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class orders the stock operations of feedings run on several threads (see ParallelCommandRunner)
+ * While the commands are read, every feeding that takes food gets a ticket per food type it eats, in input order
+ * A feeding takes its food only when every earlier ticket of its food types is done, so the stock, the low stock
+ * alerts and the forecast change in the same order as in a sequential run, feedings of other foods do not wait for it
+ * Tickets are given out in one order for all food types, so the earliest waiting feeding can always go on
+ * If a command fails its later tickets are never passed on, so the arbiter is aborted and every wait ends with an exception
+ */
+
+public class StockArbiter {
+    private static final int SPINS = 64;
+
+    // The ticket of every food type whose turn it is, and the next ticket to give out
+    private final AtomicLongArray served = new AtomicLongArray(FoodType.values().length);
+    private final long[] issued = new long[FoodType.values().length];
+    private volatile boolean aborted;
+
+    /*
+    Gives out the next ticket of the food type, only the thread reading the commands calls it
+     */
+    public long issue(FoodType type) {
+        return issued[type.ordinal()]++;
+    }
+
+    /*
+    Waits until it is the ticket's turn, spinning shortly before yielding since turns are usually short.
+    Throws CancellationException once the arbiter is aborted
+     */
+    public void await(FoodType type, long ticket) {
+        int spins = 0;
+        while (served.get(type.ordinal()) != ticket) {
+            if (aborted) {
+                throw new CancellationException("Stopped waiting for " + type.getName() + " stock, an earlier command failed");
+            }
+            if (++spins < SPINS) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+
+    public void release(FoodType type, long ticket) {
+        served.set(type.ordinal(), ticket + 1);
+    }
+
+    // Ends every current and future wait, used when a command holding tickets fails
+    public void abort() {
+        aborted = true;
+    }
+}
+
+/**
+ * The tickets of the feeding a thread is running, one per food type or NO_TICKET
+ */
+class StockTurn {
+    static final long NO_TICKET = -1;
+
+    private final StockArbiter arbiter;
+    private final long[] tickets = new long[FoodType.values().length];
+
+    StockTurn(StockArbiter arbiter) {
+        this.arbiter = arbiter;
+        Arrays.fill(tickets, NO_TICKET);
+    }
+
+    public void setTicket(int type, long ticket) {
+        tickets[type] = ticket;
+    }
+
+    // Waits until the feeding is next to take food of every one of the types
+    public void acquire(FoodType[] types) {
+        for (FoodType type : types) {
+            long ticket = tickets[type.ordinal()];
+            if (ticket != NO_TICKET) {
+                arbiter.await(type, ticket);
+            }
+        }
+    }
+
+    // Lets the next feeding take food of the types, the tickets are used up
+    public void release(FoodType[] types) {
+        for (FoodType type : types) {
+            long ticket = tickets[type.ordinal()];
+            if (ticket != NO_TICKET) {
+                arbiter.release(type, ticket);
+                tickets[type.ordinal()] = NO_TICKET;
+            }
+        }
+    }
+
+    /*
+    Waits for and passes on the turns of tickets the command did not use, so the feedings after it are not held up
+     */
+    public void finish() {
+        FoodType[] types = FoodType.values();
+        for (int type = 0; type < tickets.length; type++) {
+            if (tickets[type] != NO_TICKET) {
+                arbiter.await(types[type], tickets[type]);
+                arbiter.release(types[type], tickets[type]);
+                tickets[type] = NO_TICKET;
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+import java.util.Arrays;
+
+/**
+ * This class keeps a rolling consumption rate for every species, used to estimate when the food stock runs out
+ * Time is counted in processed commands, every feeding adds its grams to an exponentially weighted average
+ * whose weight halves every halfLife commands, so recording a feeding and reading a rate are both O(1)
+ * Species are identified by their AnimalRegistry codes
+ */
+
+public class StockForecast {
+    private final double decayPerCommand;
+    private double[] rates = new double[8];
+    private long[] lastUpdates = new long[8];
+
+    /*
+    Creates a forecast where a feeding counts half as much after halfLife commands
+     */
+    public StockForecast(double halfLife) {
+        this.decayPerCommand = Math.pow(0.5, 1.0 / halfLife);
+    }
+
+    /*
+    Records that the species ate the given grams at the given command
+     */
+    public synchronized void record(int species, long grams, long command) {
+        ensureCapacity(species);
+        rates[species] = decayedRate(species, command) + (1.0 - decayPerCommand) * grams;
+        lastUpdates[species] = Math.max(lastUpdates[species], command);
+    }
+
+    /*
+    Returns the grams per command the species eats at the given command. The average starts at zero,
+    so early on it is divided by the total weight given so far to not underestimate the rate
+     */
+    public synchronized double rate(int species, long command) {
+        if (species >= rates.length || command <= 0) {
+            return 0.0;
+        }
+        return decayedRate(species, command) / (1.0 - Math.pow(decayPerCommand, command));
+    }
+
+    /*
+    Returns a copy of the rates, restore puts them back, used to undo the feedings of a rolled back transaction
+     */
+    public synchronized StockForecast copy() {
+        StockForecast copy = new StockForecast(1.0);
+        copy.rates = rates.clone();
+        copy.lastUpdates = lastUpdates.clone();
+        return copy;
+    }
+
+    public synchronized void restore(StockForecast saved) {
+        rates = saved.rates.clone();
+        lastUpdates = saved.lastUpdates.clone();
+    }
+
+    private double decayedRate(int species, long command) {
+        long elapsed = command - lastUpdates[species];
+        return elapsed > 0 ? rates[species] * Math.pow(decayPerCommand, elapsed) : rates[species];
+    }
+
+    private void ensureCapacity(int species) {
+        if (species >= rates.length) {
+            int capacity = Math.max(species + 1, rates.length * 2);
+            rates = Arrays.copyOf(rates, capacity);
+            lastUpdates = Arrays.copyOf(lastUpdates, capacity);
+        }
+    }
+}
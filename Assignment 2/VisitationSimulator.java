@@ -0,0 +1,192 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class simulates peak loads of visits with a limited number of visitation slots per animal
+ * Every animal gets a fair semaphore with capacity permits: a visitor holds one permit for the visit duration,
+ * a personnel cleaning the habitat takes all of them, so nobody visits during a cleaning and the cleaning waits for the visitors to leave
+ * Requests queue in arrival order when the enclosure is full, each one is run by its own virtual thread
+ * The visit itself goes through CommandProcessor.visit with the loaded Personnel/Visitor model
+ *
+ * Virtual threads are only final from Java 21 on, they are looked up by reflection and when the runtime does not have them
+ * a fixed pool of platform threads is used instead, then at most that many requests wait for a slot at the same time
+ *
+ * Usage: java VisitationSimulator <animals.txt> <persons.txt> [requests=100000] [capacity=50] [visitMillis=20]
+ *                                 [cleaningMillis=50] [cleaningShare=0.01] [arrivalMillis=0] [threads=1000] [seed=1]
+ *
+ * A request is a cleaning by a random personnel with probability cleaningShare, otherwise a visit by a random visitor,
+ * to a random animal. All requests arrive within arrivalMillis (0 means at once)
+ */
+
+public class VisitationSimulator {
+
+    /**
+     * Loads the zoo, runs the simulation and prints the report.
+     *
+     * @param args the animals and persons files followed by optional key=value settings
+     * @throws IOException if a file cannot be read
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.out.println("Usage: java VisitationSimulator <animals.txt> <persons.txt> [key=value ...]");
+            return;
+        }
+        Map<String, String> options = new HashMap<>();
+        for (int i = 2; i < args.length; i++) {
+            String[] pair = args[i].split("=", 2);
+            options.put(pair[0], pair.length > 1 ? pair[1] : "");
+        }
+        int requests = Integer.parseInt(options.getOrDefault("requests", "100000"));
+        int capacity = Integer.parseInt(options.getOrDefault("capacity", "50"));
+        long visitMillis = Long.parseLong(options.getOrDefault("visitMillis", "20"));
+        long cleaningMillis = Long.parseLong(options.getOrDefault("cleaningMillis", "50"));
+        double cleaningShare = Double.parseDouble(options.getOrDefault("cleaningShare", "0.01"));
+        long arrivalMillis = Long.parseLong(options.getOrDefault("arrivalMillis", "0"));
+        int threads = Integer.parseInt(options.getOrDefault("threads", "1000"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "1"));
+
+        CommandProcessor processor = new CommandProcessor();
+        List<Animal> animals = new ArrayList<>();
+        List<Person> visitors = new ArrayList<>();
+        List<Person> personnel = new ArrayList<>();
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        ZooLoader.await(ZooLoader.load(pool, args[0], Main::parseAnimal, Main::describeAnimal)).mergeInto(animal -> {
+            processor.addAnimal(animal);
+            animals.add(animal);
+        }, Writer.nullWriter());
+        ZooLoader.await(ZooLoader.load(pool, args[1], Main::parsePerson, Main::describePerson)).mergeInto(person -> {
+            processor.addPerson(person);
+            (person instanceof Personnel ? personnel : visitors).add(person);
+        }, Writer.nullWriter());
+        if (animals.isEmpty() || visitors.isEmpty() && personnel.isEmpty()) {
+            System.out.println("The simulation needs at least one animal and one person");
+            return;
+        }
+
+        Map<String, Semaphore> slots = new HashMap<>();
+        for (Animal animal : animals) {
+            slots.putIfAbsent(animal.getName(), new Semaphore(capacity, true));
+        }
+
+        // Every request is prepared up front, each one writes only its own entries of the result arrays
+        SplittableRandom random = new SplittableRandom(seed);
+        Person[] requestPersons = new Person[requests];
+        Animal[] requestAnimals = new Animal[requests];
+        long[] arrivalOffsets = new long[requests];
+        for (int i = 0; i < requests; i++) {
+            boolean cleaning = visitors.isEmpty() || !personnel.isEmpty() && random.nextDouble() < cleaningShare;
+            List<Person> candidates = cleaning ? personnel : visitors;
+            requestPersons[i] = candidates.get(random.nextInt(candidates.size()));
+            requestAnimals[i] = animals.get(random.nextInt(animals.size()));
+            arrivalOffsets[i] = arrivalMillis > 0 ? TimeUnit.MILLISECONDS.toNanos(random.nextLong(arrivalMillis)) : 0;
+        }
+        // Requests are started in arrival order, so a pool of platform threads is not blocked by requests arriving late
+        Arrays.sort(arrivalOffsets);
+        long[] waits = new long[requests];
+        AtomicInteger waiting = new AtomicInteger();
+        AtomicInteger peakWaiting = new AtomicInteger();
+
+        ExecutorService executor = virtualThreadExecutor();
+        String threadKind = "virtual threads";
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(threads);
+            threadKind = threads + " platform threads (virtual threads need Java 21)";
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            int request = i;
+            executor.execute(() -> {
+                Person person = requestPersons[request];
+                Animal animal = requestAnimals[request];
+                boolean cleaning = person instanceof Personnel;
+                int permits = cleaning ? capacity : 1;
+                Semaphore slot = slots.get(animal.getName());
+                try {
+                    long arrival = start + arrivalOffsets[request];
+                    long early = arrival - System.nanoTime();
+                    if (early > 0) {
+                        TimeUnit.NANOSECONDS.sleep(early);
+                    }
+                    peakWaiting.accumulateAndGet(waiting.incrementAndGet(), Math::max);
+                    slot.acquire(permits);
+                    waiting.decrementAndGet();
+                    waits[request] = System.nanoTime() - arrival;
+                    try {
+                        processor.visit(person.getId(), null, animal.getName(), Writer.nullWriter());
+                        Thread.sleep(cleaning ? cleaningMillis : visitMillis);
+                    } finally {
+                        slot.release(permits);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        long elapsed = System.nanoTime() - start;
+
+        report(requestPersons, waits, elapsed, peakWaiting.get(), animals.size(), capacity, threadKind);
+    }
+
+    /*
+    Returns an executor starting a virtual thread per task, or null if this runtime has no virtual threads
+     */
+    private static ExecutorService virtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static void report(Person[] requestPersons, long[] waits, long elapsedNanos, int peakWaiting,
+                               int animalCount, int capacity, String threadKind) {
+        long[] visitWaits = new long[waits.length];
+        long[] cleaningWaits = new long[waits.length];
+        int visits = 0;
+        int cleanings = 0;
+        for (int i = 0; i < waits.length; i++) {
+            if (requestPersons[i] instanceof Personnel) {
+                cleaningWaits[cleanings++] = waits[i];
+            } else {
+                visitWaits[visits++] = waits[i];
+            }
+        }
+        double seconds = elapsedNanos / 1e9;
+        System.out.printf("%d requests (%d visits, %d cleanings) on %d animals with %d slots each, run by %s%n",
+                waits.length, visits, cleanings, animalCount, capacity, threadKind);
+        System.out.printf("Elapsed %.2f s, %.0f requests/s, at most %d requests waiting at once%n",
+                seconds, waits.length / seconds, peakWaiting);
+        System.out.printf("%-10s %10s %10s %10s %10s%n", "Wait ms", "p50", "p90", "p99", "max");
+        printPercentiles("visits", Arrays.copyOf(visitWaits, visits));
+        printPercentiles("cleanings", Arrays.copyOf(cleaningWaits, cleanings));
+    }
+
+    private static void printPercentiles(String label, long[] waits) {
+        if (waits.length == 0) {
+            System.out.printf("%-10s %10s%n", label, "-");
+            return;
+        }
+        Arrays.sort(waits);
+        System.out.printf("%-10s %10.2f %10.2f %10.2f %10.2f%n", label,
+                percentile(waits, 0.50) / 1e6, percentile(waits, 0.90) / 1e6,
+                percentile(waits, 0.99) / 1e6, waits[waits.length - 1] / 1e6);
+    }
+
+    // Nearest-rank percentile of sorted values
+    private static long percentile(long[] sorted, double fraction) {
+        int rank = (int) Math.ceil(fraction * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+}
@@ -0,0 +1,301 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * This class keeps the food stock of every warehouse of the zoo, each warehouse has at most one Foods per food type
+ * Foods lines without a warehouse go to the default warehouse, so a zoo with one warehouse works as before
+ * Animals can have a location, every location gets a preference order of the warehouses by distance,
+ * computed once when it is first fed from and kept, so a feeding never sorts anything
+ * Animals without a location and feeding rounds use the warehouses in the order they were added
+ * Every Foods gets a stock index (its position in the order foods were added), draws and undo logs refer to stocks by it
+ */
+
+public class Warehouses {
+    public static final String DEFAULT_WAREHOUSE = "Main";
+    // Returned by draw when no warehouse has the food type at all
+    public static final long NO_STOCK = Long.MIN_VALUE + 1;
+    public static final int NO_LOCATION = 0;
+
+    private final List<Warehouse> warehouses = new ArrayList<>();
+    private final HashMap<String, Integer> warehousesByName = new HashMap<>();
+    private final List<Foods> stocks = new ArrayList<>();
+
+    // Locations by id, id 0 is NO_LOCATION, the arrays double when full
+    private double[] locationX = new double[16];
+    private double[] locationY = new double[16];
+    private int locationCount = 1;
+    private final HashMap<Point, Integer> locationIds = new HashMap<>();
+
+    // Preference order of every location, null until it is first used. The array is replaced when it grows or
+    // the warehouses change, its entries are set under the lock and read without it
+    private volatile AtomicReferenceArray<int[]> preferences = new AtomicReferenceArray<>(16);
+
+    /*
+    Adds a warehouse with its coordinates, or sets the coordinates of a warehouse already named by a foods line
+     */
+    public synchronized void addWarehouse(String name, double x, double y) {
+        Warehouse warehouse = warehouses.get(warehouseIndex(name));
+        warehouse.x = x;
+        warehouse.y = y;
+        preferences = new AtomicReferenceArray<>(locationX.length);
+    }
+
+    /*
+    Adds the food to the stock of its warehouse and returns its stock index. A warehouse keeps the first food
+    of every type, later ones get a stock index but are not drawn from
+     */
+    public synchronized int addStock(Foods food) {
+        String name = food.getWarehouse() == null ? DEFAULT_WAREHOUSE : food.getWarehouse();
+        Warehouse warehouse = warehouses.get(warehouseIndex(name));
+        stocks.add(food);
+        FoodType type = FoodType.fromName(food.getType());
+        if (type != null && warehouse.stocks[type.ordinal()] < 0) {
+            warehouse.stocks[type.ordinal()] = stocks.size() - 1;
+        }
+        return stocks.size() - 1;
+    }
+
+    /*
+    Returns the id of a location, the same coordinates always get the same id
+     */
+    public synchronized int location(double x, double y) {
+        if (Double.isNaN(x) || Double.isNaN(y)) {
+            return NO_LOCATION;
+        }
+        Point point = new Point(Double.doubleToLongBits(x), Double.doubleToLongBits(y));
+        Integer id = locationIds.get(point);
+        if (id != null) {
+            return id;
+        }
+        int added = locationCount++;
+        if (added == locationX.length) {
+            locationX = Arrays.copyOf(locationX, added * 2);
+            locationY = Arrays.copyOf(locationY, added * 2);
+            AtomicReferenceArray<int[]> larger = new AtomicReferenceArray<>(added * 2);
+            for (int i = 0; i < added; i++) {
+                larger.set(i, preferences.get(i));
+            }
+            preferences = larger;
+        }
+        locationX[added] = x;
+        locationY[added] = y;
+        locationIds.put(point, added);
+        return added;
+    }
+
+    /*
+    Returns the warehouses of a location nearest first. Warehouses without coordinates come after the others,
+    equally distant ones stay in the order they were added
+     */
+    public int[] preference(int location) {
+        int[] order = preferences.get(location);
+        if (order == null) {
+            order = computePreference(location);
+        }
+        return order;
+    }
+
+    private synchronized int[] computePreference(int location) {
+        int[] known = preferences.get(location);
+        if (known != null) {
+            return known;
+        }
+        Integer[] order = new Integer[warehouses.size()];
+        double[] distances = new double[order.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+            Warehouse warehouse = warehouses.get(i);
+            distances[i] = location == NO_LOCATION || Double.isNaN(warehouse.x) ? Double.POSITIVE_INFINITY
+                    : Math.hypot(warehouse.x - locationX[location], warehouse.y - locationY[location]);
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(distances[a], distances[b]));
+        int[] result = new int[order.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = order[i];
+        }
+        preferences.set(location, result);
+        return result;
+    }
+
+    /**
+     * Takes the grams of the food type from the warehouses in the given order, or nothing at all.
+     * All of it is taken from the first warehouse having the food type if it has enough, otherwise
+     * it is split over the warehouses in order, taking what each of them has.
+     *
+     * @param type  the food type
+     * @param grams the grams to take
+     * @param order the warehouses to take from, most preferred first
+     * @param draws receives a draw for every warehouse food was taken from
+     * @return the grams left in the warehouse drawn from last (so with one warehouse, the stock left),
+     *         Foods.NOT_ENOUGH if all of them together do not have enough, NO_STOCK if none of them has the food type
+     */
+    public long draw(FoodType type, long grams, int[] order, StockDraws draws) {
+        int t = type.ordinal();
+        int primary = -1;
+        boolean split = false;
+        for (int w : order) {
+            int stock = warehouses.get(w).stocks[t];
+            if (stock >= 0) {
+                if (primary >= 0) {
+                    split = true;
+                    break;
+                }
+                primary = stock;
+            }
+        }
+        if (primary < 0) {
+            return NO_STOCK;
+        }
+        long left = stocks.get(primary).tryDebit(grams);
+        if (left != Foods.NOT_ENOUGH) {
+            draws.add(primary, grams);
+            return left;
+        }
+        if (!split) {
+            return Foods.NOT_ENOUGH;
+        }
+
+        /*
+        Checks that the warehouses together have enough before taking anything, then takes every share with tryDebit.
+        A share another feeding took first is put back with the rest and the feed is tried again from the check
+         */
+        int mark = draws.size();
+        while (true) {
+            long total = 0;
+            for (int w : order) {
+                int stock = warehouses.get(w).stocks[t];
+                if (stock >= 0) {
+                    total += stocks.get(stock).getGrams();
+                }
+            }
+            if (total < grams) {
+                return Foods.NOT_ENOUGH;
+            }
+            long missing = grams;
+            for (int i = 0; i < order.length && missing > 0; i++) {
+                int stock = warehouses.get(order[i]).stocks[t];
+                if (stock >= 0) {
+                    long share = Math.min(missing, stocks.get(stock).getGrams());
+                    if (share > 0) {
+                        left = stocks.get(stock).tryDebit(share);
+                        if (left == Foods.NOT_ENOUGH) {
+                            break;
+                        }
+                        draws.add(stock, share);
+                        missing -= share;
+                    }
+                }
+            }
+            if (missing == 0) {
+                return left;
+            }
+            draws.undo(mark, this);
+        }
+    }
+
+    /*
+    Returns the grams of the food type in all warehouses together, O(warehouses)
+     */
+    public long totalGrams(FoodType type) {
+        long total = 0;
+        for (Warehouse warehouse : warehouses) {
+            int stock = warehouse.stocks[type.ordinal()];
+            if (stock >= 0) {
+                total += stocks.get(stock).getGrams();
+            }
+        }
+        return total;
+    }
+
+    /*
+    Returns the food of the type in the first warehouse having it, null if there is none
+     */
+    public Foods firstStock(FoodType type) {
+        for (Warehouse warehouse : warehouses) {
+            int stock = warehouse.stocks[type.ordinal()];
+            if (stock >= 0) {
+                return stocks.get(stock);
+            }
+        }
+        return null;
+    }
+
+    public Foods getStock(int stock) {
+        return stocks.get(stock);
+    }
+
+    public String getWarehouseName(int stock) {
+        String name = stocks.get(stock).getWarehouse();
+        return name == null ? DEFAULT_WAREHOUSE : name;
+    }
+
+    public int size() {
+        return warehouses.size();
+    }
+
+    private int warehouseIndex(String name) {
+        Integer index = warehousesByName.get(name);
+        if (index == null) {
+            index = warehouses.size();
+            warehouses.add(new Warehouse());
+            warehousesByName.put(name, index);
+            preferences = new AtomicReferenceArray<>(locationX.length);
+        }
+        return index;
+    }
+
+    // The bits of a location's coordinates, so equal coordinates are one key without building a String
+    private record Point(long x, long y) {
+    }
+
+    private static class Warehouse {
+        double x = Double.NaN;
+        double y = Double.NaN;
+        // Stock index of every food type, -1 if the warehouse does not have it
+        final int[] stocks = new int[FoodType.values().length];
+
+        Warehouse() {
+            Arrays.fill(stocks, -1);
+        }
+    }
+}
+
+/**
+ * The draws of one feeding, stock indexes and grams in primitive arrays, used to report where the food came from
+ * and to put it back when the feeding fails
+ */
+class StockDraws {
+    private int[] stocks = new int[4];
+    private long[] grams = new long[4];
+    private int size;
+
+    public void add(int stock, long amount) {
+        if (size == stocks.length) {
+            stocks = Arrays.copyOf(stocks, size * 2);
+            grams = Arrays.copyOf(grams, size * 2);
+        }
+        stocks[size] = stock;
+        grams[size++] = amount;
+    }
+
+    // Credits the draws from the given one on back to their stocks and forgets them
+    public void undo(int from, Warehouses warehouses) {
+        while (size > from) {
+            size--;
+            warehouses.getStock(stocks[size]).credit(grams[size]);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+    public int getStock(int draw) {
+        return stocks[draw];
+    }
+    public long getGrams(int draw) {
+        return grams[draw];
+    }
+}
@@ -0,0 +1,152 @@
+import java.io.*;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class runs the zoo pipeline for many parks in one JVM
+ * Every park is an independent input set run by Main.run with its own CommandProcessor, the parks are run
+ * as tasks of one work-stealing ForkJoinPool (their file loading tasks go to the same pool) and write their outputs at the same time
+ * A failing park does not stop the others, a summary of all parks with their timings is printed at the end
+ *
+ * Usage: java ZooBatchRunner <manifest> [--parallelism=n]
+ *
+ * Every non-empty manifest line is name,animals,persons,foods,commands,output
+ * Relative paths are resolved against the directory of the manifest, lines starting with # are skipped
+ */
+
+public class ZooBatchRunner {
+
+    /**
+     * Runs every park of the manifest and prints the summary.
+     *
+     * @param args the manifest file and the optional parallelism
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("Usage: java ZooBatchRunner <manifest> [--parallelism=n]");
+            return;
+        }
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].startsWith("--parallelism=")) {
+                parallelism = Integer.parseInt(args[i].substring("--parallelism=".length()));
+            }
+        }
+
+        List<Park> parks;
+        try {
+            parks = readManifest(args[0]);
+        } catch (IOException e) {
+            System.out.println("Error reading manifest: " + e.getMessage());
+            return;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        long start = System.nanoTime();
+        try {
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    List<ParkTask> tasks = new ArrayList<>(parks.size());
+                    for (Park park : parks) {
+                        tasks.add(new ParkTask(park, pool));
+                    }
+                    invokeAll(tasks);
+                }
+            });
+        } finally {
+            pool.shutdown();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        printSummary(parks, elapsed, parallelism, System.out);
+    }
+
+    /*
+    Reads the parks of the manifest, a malformed line stops the batch before any park is run
+     */
+    static List<Park> readManifest(String manifestFile) throws IOException {
+        Path directory = Paths.get(manifestFile).toAbsolutePath().getParent();
+        List<Park> parks = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(manifestFile))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] tokens = line.split(",");
+                if (tokens.length != 6) {
+                    throw new IOException("Line " + lineNumber + " should be name,animals,persons,foods,commands,output: " + line);
+                }
+                String[] files = new String[5];
+                for (int i = 0; i < files.length; i++) {
+                    files[i] = directory.resolve(tokens[i + 1].trim()).toString();
+                }
+                parks.add(new Park(tokens[0].trim(), files));
+            }
+        }
+        return parks;
+    }
+
+    static void printSummary(List<Park> parks, long elapsedNanos, int parallelism, PrintStream out) {
+        out.printf("%-24s %-8s %10s %12s%n", "Park", "Status", "Time ms", "Output KB");
+        long totalNanos = 0;
+        int failed = 0;
+        for (Park park : parks) {
+            totalNanos += park.nanos;
+            out.printf("%-24s %-8s %10.1f %12d%n", park.name, park.failure == null ? "OK" : "FAILED",
+                    park.nanos / 1e6, new File(park.files[4]).length() / 1024);
+            if (park.failure != null) {
+                failed++;
+                out.println("    " + park.failure);
+            }
+        }
+        out.printf("%d parks (%d failed) in %.1f ms on %d threads, %.1f ms of park time%n",
+                parks.size(), failed, elapsedNanos / 1e6, parallelism, totalNanos / 1e6);
+    }
+
+    /*
+    One park of the manifest, the files are animals, persons, foods, commands and output.
+    Its timing and failure are filled in by its task
+     */
+    static class Park {
+        final String name;
+        final String[] files;
+        long nanos;
+        String failure;
+
+        Park(String name, String[] files) {
+            this.name = name;
+            this.files = files;
+        }
+    }
+
+    private static class ParkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Park park;
+        private final ForkJoinPool pool;
+
+        ParkTask(Park park, ForkJoinPool pool) {
+            this.park = park;
+            this.pool = pool;
+        }
+
+        @Override
+        protected void compute() {
+            long start = System.nanoTime();
+            try {
+                Main.run(park.files[0], park.files[1], park.files[2], park.files[3], park.files[4], pool);
+            } catch (IOException | RuntimeException e) {
+                park.failure = e.getClass().getSimpleName() + ": " + e.getMessage();
+            }
+            park.nanos = System.nanoTime() - start;
+        }
+    }
+}
@@ -0,0 +1,262 @@
+import java.io.*;
+import java.util.*;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * This class is a small benchmark harness for the zoo
+ * It builds a zoo of generated animals, persons and a large food stock, writes a generated commands file
+ * and reports the throughput of every selected scenario, output is discarded so only the processing is measured
+ *
+ * Usage: java ZooBenchmark [animals=1000] [persons=1000] [lines=1000000] [iterations=5]
+ *                          [threads=1,2,4,8] [time=1] [scenarios=parse,contention]
+ *
+ * The ingest scenario is only run when it is selected, e.g. scenarios=ingest
+ *
+ * Scenarios:
+ * parse - lines/second of the commands file read with Scanner and split (the old path) and with CommandReader
+ * contention - feedings/second when several keeper threads feed random animals from the same food stock
+ * ingest - sensor readings/second when several sensor threads report for random animals, with the bytes allocated per reading
+ */
+
+public class ZooBenchmark {
+    private static int iterations = 5;
+
+    /**
+     * Runs every selected scenario.
+     *
+     * @param args Optional key=value settings, see the class documentation
+     * @throws IOException If the temporary commands file cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] pair = arg.split("=", 2);
+            options.put(pair[0], pair.length > 1 ? pair[1] : "");
+        }
+        int animalCount = Integer.parseInt(options.getOrDefault("animals", "1000"));
+        int personCount = Integer.parseInt(options.getOrDefault("persons", "1000"));
+        int lineCount = Integer.parseInt(options.getOrDefault("lines", "1000000"));
+        iterations = Integer.parseInt(options.getOrDefault("iterations", "5"));
+        String[] threadCounts = options.getOrDefault("threads", "1,2,4,8").split(",");
+        long durationNanos = (long) (Double.parseDouble(options.getOrDefault("time", "1")) * 1_000_000_000L);
+        Set<String> scenarios = new HashSet<>(Arrays.asList(options.getOrDefault("scenarios", "parse,contention").split(",")));
+
+        if (scenarios.contains("parse")) {
+            File commandsFile = writeCommandsFile(lineCount, animalCount, personCount);
+            try {
+                CommandProcessor processor = createZoo(animalCount, personCount);
+                double scannerRate = measure(lineCount, () -> {
+                    try (Scanner scanner = new Scanner(new FileReader(commandsFile))) {
+                        while (scanner.hasNextLine()) {
+                            String line = scanner.nextLine();
+                            if (!line.isEmpty()) {
+                                processor.processCommand(line, Writer.nullWriter());
+                            }
+                        }
+                    }
+                });
+                CommandReader reader = new CommandReader(processor);
+                double readerRate = measure(lineCount, () -> {
+                    try (InputStream input = new FileInputStream(commandsFile)) {
+                        reader.processStream(input, Writer.nullWriter());
+                    }
+                });
+                System.out.printf("%-10s %14s %14s %8s%n", "Scenario", "Scanner l/s", "Reader l/s", "Speedup");
+                System.out.printf("%-10s %14.0f %14.0f %7.2fx%n", "parse", scannerRate, readerRate, readerRate / scannerRate);
+            } finally {
+                commandsFile.delete();
+            }
+        }
+
+        if (scenarios.contains("contention")) {
+            System.out.printf("%-10s %8s %14s%n", "Scenario", "Threads", "feeds/s");
+            for (String threadCount : threadCounts) {
+                int threads = Integer.parseInt(threadCount.trim());
+                CommandProcessor processor = createZoo(animalCount, personCount);
+                System.out.printf("%-10s %8d %14.0f%n", "contention", threads,
+                        measureContention(processor, threads, animalCount, durationNanos));
+            }
+        }
+
+        if (scenarios.contains("ingest")) {
+            System.out.printf("%-10s %8s %14s %10s %10s%n", "Scenario", "Threads", "readings/s", "B/reading", "Dropped");
+            for (String threadCount : threadCounts) {
+                int threads = Integer.parseInt(threadCount.trim());
+                CommandProcessor processor = createZoo(animalCount, personCount);
+                measureIngest(processor.getTelemetry(), threads, animalCount, durationNanos);
+            }
+        }
+    }
+
+    /*
+    Lets every thread feed random animals as a personnel for the given time and returns the total feedings/second.
+    Each thread has its own output, like separate keepers would
+     */
+    private static double measureContention(CommandProcessor processor, int threads, int animalCount, long durationNanos) {
+        String[] names = new String[animalCount];
+        for (int i = 0; i < animalCount; i++) {
+            names[i] = "Animal" + i;
+        }
+        long[] feeds = runThreads(threads, durationNanos, (keeper, end) -> {
+            SplittableRandom random = new SplittableRandom(keeper);
+            Writer output = Writer.nullWriter();
+            long count = 0;
+            while (System.nanoTime() < end) {
+                // Person 1001 is a personnel, see createZoo
+                processor.feed(1001, null, names[random.nextInt(animalCount)], 1, output);
+                count++;
+            }
+            return count;
+        });
+        return feeds[threads] * 1e9 / feeds[threads + 1];
+    }
+
+    /*
+    Lets every thread record readings of random animals for the given time, each reading one millisecond
+    after the one before on the thread's clock, and prints the readings/second and the bytes allocated per reading
+     */
+    private static void measureIngest(AnimalTelemetry telemetry, int threads, int animalCount, long durationNanos) {
+        java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean allocations = threadBean instanceof com.sun.management.ThreadMXBean
+                ? (com.sun.management.ThreadMXBean) threadBean : null;
+        // The buffers of an animal are created with its first reading, that is not counted as allocation per reading
+        for (int row = 0; row < animalCount; row++) {
+            telemetry.record(row, AnimalTelemetry.TEMPERATURE, 0, 37.0);
+        }
+        long[] allocated = new long[threads];
+        long[] readings = runThreads(threads, durationNanos, (sensor, end) -> {
+            SplittableRandom random = new SplittableRandom(sensor);
+            long before = allocations != null ? allocations.getThreadAllocatedBytes(Thread.currentThread().getId()) : 0;
+            long time = 0;
+            long count = 0;
+            while (true) {
+                // Checking the time is slower than a reading, so it is only done every 1024 readings
+                if ((count & 1023) == 0 && System.nanoTime() >= end) {
+                    break;
+                }
+                int row = random.nextInt(animalCount);
+                if ((count & 1) == 0) {
+                    telemetry.record(row, AnimalTelemetry.TEMPERATURE, time, 37.0 + random.nextDouble() * 2.0);
+                } else {
+                    telemetry.record(row, AnimalTelemetry.ACTIVITY, time, random.nextInt(100));
+                }
+                time++;
+                count++;
+            }
+            if (allocations != null) {
+                allocated[sensor] = allocations.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+            }
+            return count;
+        });
+        long total = readings[threads];
+        System.out.printf("%-10s %8d %14.0f %10s %10d%n", "ingest", threads, total * 1e9 / readings[threads + 1],
+                allocations != null ? String.format("%.3f", Arrays.stream(allocated).sum() / (double) total) : "-",
+                telemetry.getDropped());
+    }
+
+    /*
+    Starts the threads at the same time and lets each run the work until the given end.
+    Returns the count of every thread, followed by the total count and the elapsed nanoseconds
+     */
+    private static long[] runThreads(int threads, long durationNanos, ThreadWork work) {
+        long[] counts = new long[threads + 2];
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        long[] end = new long[1];
+        for (int t = 0; t < threads; t++) {
+            int worker = t;
+            workers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                    counts[worker] = work.run(worker, end[0]);
+                } catch (IOException | InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            workers[t].start();
+        }
+        long begin = System.nanoTime();
+        end[0] = begin + durationNanos;
+        start.countDown();
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        counts[threads + 1] = System.nanoTime() - begin;
+        for (int t = 0; t < threads; t++) {
+            counts[threads] += counts[t];
+        }
+        return counts;
+    }
+
+    /*
+    Runs the operation once to warm up and then the given number of iterations, returning the best lines/second
+     */
+    private static double measure(int lineCount, IOAction operation) throws IOException {
+        double best = 0;
+        for (int iteration = 0; iteration <= iterations; iteration++) {
+            long start = System.nanoTime();
+            operation.run();
+            long elapsed = System.nanoTime() - start;
+            if (iteration > 0) {
+                best = Math.max(best, lineCount * 1e9 / elapsed);
+            }
+        }
+        return best;
+    }
+
+    /*
+    Creates a zoo with a food stock large enough that no feeding runs out during the benchmark
+     */
+    static CommandProcessor createZoo(int animalCount, int personCount) {
+        CommandProcessor processor = new CommandProcessor();
+        SpeciesTable species = SpeciesTable.defaults();
+        for (int i = 0; i < animalCount; i++) {
+            processor.addAnimal(new Animal(species.get(i % species.size()), "Animal" + i, 1 + i % 20));
+        }
+        for (int i = 0; i < personCount; i++) {
+            String type = i % 4 == 0 ? "Visitor" : "Personnel";
+            processor.addPerson(CommandProcessor.createPerson(type, "Person" + i, 1000 + i));
+        }
+        processor.addFood(CommandProcessor.createFood("Meat", 1e15));
+        processor.addFood(CommandProcessor.createFood("Fish", 1e15));
+        processor.addFood(CommandProcessor.createFood("Plant", 1e15));
+        return processor;
+    }
+
+    /*
+    Writes a commands file with mostly feedings, some visits and a listing of the stock every 100 lines
+     */
+    private static File writeCommandsFile(int lineCount, int animalCount, int personCount) throws IOException {
+        File file = File.createTempFile("zoo-commands", ".txt");
+        SplittableRandom random = new SplittableRandom(42L);
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file), 1 << 16)) {
+            for (int i = 0; i < lineCount; i++) {
+                int personId = 1000 + random.nextInt(personCount);
+                String animal = "Animal" + random.nextInt(animalCount);
+                if (i % 100 == 99) {
+                    writer.write("List Food Stock");
+                } else if (i % 4 == 3) {
+                    writer.write("Animal Visitation," + personId + "," + animal);
+                } else {
+                    writer.write("Feed Animal," + personId + "," + animal + "," + (1 + random.nextInt(3)));
+                }
+                writer.newLine();
+            }
+        }
+        return file;
+    }
+
+    private interface IOAction {
+        void run() throws IOException;
+    }
+
+    private interface ThreadWork {
+        long run(int thread, long endNanos) throws IOException;
+    }
+}
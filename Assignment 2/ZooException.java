@@ -37,6 +37,15 @@ class VisitorsCantFeed extends ZooException{
     }
 }
 
+// Custom exception which is for the case if a visitor asks to clean a habitat
+class VisitorsCantClean extends ZooException{
+    private static final long serialVersionUID = 1L;
+
+    public VisitorsCantClean(String message) {
+        super(message);
+    }
+}
+
 // Custom exception which occurs when there is not enough food stock
 class NotEnoughStock extends ZooException{
     public NotEnoughStock(String message) {
@@ -0,0 +1,227 @@
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * This class loads the initialization files (animals, persons, foods) in parallel
+ * Every file is loaded by its own task, and a large file is cut at line boundaries into chunks parsed by separate tasks
+ * Each chunk keeps its parsed objects and the "Added new ..." lines for them, so merging the chunks in file order
+ * adds the objects and writes the lines exactly as loading the file line by line would
+ */
+
+public class ZooLoader {
+    private static final int MIN_CHUNK_SIZE = 1 << 20;
+    private static final int BOUNDARY_WINDOW = 4096;
+
+    /**
+     * Starts loading a file on the pool.
+     *
+     * @param pool      the pool running the file task and its chunk tasks
+     * @param fileName  the file to load, one object per non-empty line
+     * @param parser    creates the object of a line, may throw for malformed lines
+     * @param describer gives the output line (without line feed) for a loaded object
+     * @param <T>       type of the loaded objects
+     * @return the running task, pass it to await to get the loaded section
+     */
+    public static <T> ForkJoinTask<Section<T>> load(ForkJoinPool pool, String fileName,
+                                                    Function<String, T> parser, Function<T, String> describer) {
+        return pool.submit(new FileTask<>(fileName, parser, describer, Charset.defaultCharset(), pool.getParallelism()));
+    }
+
+    /*
+    Waits for a loading task, an error opening or reading the file is thrown as the IOException it was
+     */
+    public static <T> Section<T> await(ForkJoinTask<Section<T>> task) throws IOException {
+        try {
+            return task.join();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * The result of loading one file, its chunks in file order.
+     *
+     * @param <T> type of the loaded objects
+     */
+    public static class Section<T> {
+        private final List<Chunk<T>> chunks;
+
+        Section(List<Chunk<T>> chunks) {
+            this.chunks = chunks;
+        }
+
+        /*
+        Adds the objects and writes their lines in file order. If a line could not be parsed, everything before it
+        is added and written and then the parse error is thrown, like the sequential loading did
+         */
+        public void mergeInto(Consumer<T> add, Writer output) throws IOException {
+            for (Chunk<T> chunk : chunks) {
+                for (int i = 0; i < chunk.objects.size(); i++) {
+                    add.accept(chunk.objects.get(i));
+                    output.append(chunk.lines.get(i)).append('\n');
+                }
+                if (chunk.failure != null) {
+                    throw chunk.failure;
+                }
+            }
+        }
+    }
+
+    private static class Chunk<T> {
+        final List<T> objects = new ArrayList<>();
+        final List<String> lines = new ArrayList<>();
+        RuntimeException failure;
+    }
+
+    /*
+    Cuts the file into chunks that start at line starts and parses them in parallel
+     */
+    private static class FileTask<T> extends RecursiveTask<Section<T>> {
+        private static final long serialVersionUID = 1L;
+
+        private final String fileName;
+        private final Function<String, T> parser;
+        private final Function<T, String> describer;
+        private final Charset charset;
+        private final int parallelism;
+
+        FileTask(String fileName, Function<String, T> parser, Function<T, String> describer, Charset charset, int parallelism) {
+            this.fileName = fileName;
+            this.parser = parser;
+            this.describer = describer;
+            this.charset = charset;
+            this.parallelism = parallelism;
+        }
+
+        @Override
+        protected Section<T> compute() {
+            // Opened through FileInputStream so a missing file is reported with the same message as before
+            try (FileInputStream input = new FileInputStream(fileName); FileChannel channel = input.getChannel()) {
+                long size = channel.size();
+                long chunkSize = Math.max(MIN_CHUNK_SIZE, size / (parallelism * 8L));
+                List<Long> starts = new ArrayList<>();
+                starts.add(0L);
+                for (long nominal = chunkSize; nominal < size; nominal += chunkSize) {
+                    // A line longer than a chunk can already have moved the previous start past this one
+                    if (nominal <= starts.get(starts.size() - 1)) {
+                        continue;
+                    }
+                    long start = nextLineStart(channel, nominal, size);
+                    if (start < size) {
+                        starts.add(start);
+                    }
+                }
+
+                List<ChunkTask<T>> tasks = new ArrayList<>(starts.size());
+                for (int i = 0; i < starts.size(); i++) {
+                    long end = i + 1 < starts.size() ? starts.get(i + 1) : size;
+                    tasks.add(new ChunkTask<>(channel, starts.get(i), end, this));
+                }
+                invokeAll(tasks);
+
+                List<Chunk<T>> chunks = new ArrayList<>(tasks.size());
+                for (ChunkTask<T> task : tasks) {
+                    chunks.add(task.join());
+                }
+                return new Section<>(chunks);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /*
+        Returns the position after the first line feed at or after from, or size if there is none
+         */
+        private static long nextLineStart(FileChannel channel, long from, long size) throws IOException {
+            ByteBuffer window = ByteBuffer.allocate(BOUNDARY_WINDOW);
+            long position = from;
+            while (position < size) {
+                window.clear();
+                int read = channel.read(window, position);
+                if (read <= 0) {
+                    break;
+                }
+                for (int i = 0; i < read; i++) {
+                    if (window.get(i) == '\n') {
+                        return position + i + 1;
+                    }
+                }
+                position += read;
+            }
+            return size;
+        }
+
+        /*
+        Parses the lines of one chunk, stopping at the first line that cannot be parsed
+         */
+        Chunk<T> parse(byte[] bytes, int length) {
+            Chunk<T> chunk = new Chunk<>();
+            String text = new String(bytes, 0, length, charset);
+            int lineStart = 0;
+            while (lineStart < text.length()) {
+                int lineEnd = text.indexOf('\n', lineStart);
+                if (lineEnd < 0) {
+                    lineEnd = text.length();
+                }
+                int contentEnd = lineEnd > lineStart && text.charAt(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+                if (contentEnd > lineStart) {
+                    try {
+                        T object = parser.apply(text.substring(lineStart, contentEnd));
+                        String line = describer.apply(object);
+                        chunk.objects.add(object);
+                        chunk.lines.add(line);
+                    } catch (RuntimeException e) {
+                        chunk.failure = e;
+                        return chunk;
+                    }
+                }
+                lineStart = lineEnd + 1;
+            }
+            return chunk;
+        }
+    }
+
+    private static class ChunkTask<T> extends RecursiveTask<Chunk<T>> {
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel channel;
+        private final long start;
+        private final long end;
+        private final FileTask<T> file;
+
+        ChunkTask(FileChannel channel, long start, long end, FileTask<T> file) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+            this.file = file;
+        }
+
+        @Override
+        protected Chunk<T> compute() {
+            ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(end - start));
+            try {
+                // Positional reads do not move the channel's position, so chunks can be read at the same time
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, start + buffer.position()) < 0) {
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return file.parse(buffer.array(), buffer.position());
+        }
+    }
+}
@@ -0,0 +1,78 @@
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * This enum is the result of a zoo command, used instead of throwing a ZooException for every failure
+ * Each failure code holds the fixed start of its error message, the variable part (an id, a name...) is passed in as detail
+ * Throwing is expensive because of the stack trace, so failures are only turned into exceptions when a caller asks for one
+ */
+
+public enum ZooOutcome {
+    OK(null),
+    INVALID_COMMAND("Error processing command: "),
+    INVALID_PERSON_ID("Error: There are no visitors or personnel with the id "),
+    ANIMAL_NOT_FOUND("Error: Animal not found: "),
+    NO_ANIMAL_WITH_NAME("Error: There are no animals with the name "),
+    VISITORS_CANT_FEED("Error: Visitors do not have the authority to feed animals."),
+    VISITORS_CANT_CLEAN("Error: Visitors do not have the authority to clean habitats."),
+    NO_FOOD_STOCK("Error: No food stock available for "),
+    NOT_ENOUGH_FOOD("Error: Not enough "),
+    UNKNOWN_SPECIES("Error: There are no animals of the species "),
+    TRANSACTION_OPEN("Error: A transaction is already open."),
+    NO_TRANSACTION("Error: There is no open transaction to "),
+    UNKNOWN_SAVEPOINT("Error: There is no savepoint with the name "),
+    NO_FEEDING_LOG("Error: Feedings are not being logged.");
+
+    private final String messagePrefix;
+
+    ZooOutcome(String messagePrefix) {
+        this.messagePrefix = messagePrefix;
+    }
+
+    public boolean isSuccess() {
+        return this == OK;
+    }
+
+    // Builds the same message the matching ZooException used to carry
+    public String getMessage(String detail) {
+        return detail == null ? messagePrefix : messagePrefix + detail;
+    }
+
+    // Writes the error message as a line of the output, without building the message String first
+    public void writeMessage(Writer output, String detail) throws IOException {
+        output.append(messagePrefix);
+        if (detail != null) {
+            output.append(detail);
+        }
+        output.append('\n');
+    }
+
+    // Creates the matching exception, for callers that still want failures thrown
+    public ZooException toException(String detail) {
+        String message = getMessage(detail);
+        switch (this) {
+            case INVALID_COMMAND:
+            case TRANSACTION_OPEN:
+            case NO_TRANSACTION:
+            case UNKNOWN_SAVEPOINT:
+            case NO_FEEDING_LOG:
+                return new InvalidCommandException(message);
+            case INVALID_PERSON_ID:
+                return new InvalidPersonID(message);
+            case ANIMAL_NOT_FOUND:
+            case NO_ANIMAL_WITH_NAME:
+            case UNKNOWN_SPECIES:
+                return new InvalidAnimal(message);
+            case VISITORS_CANT_FEED:
+                return new VisitorsCantFeed(message);
+            case VISITORS_CANT_CLEAN:
+                return new VisitorsCantClean(message);
+            case NO_FOOD_STOCK:
+                return new NotEnoughStock(message);
+            case NOT_ENOUGH_FOOD:
+                return new NotEnoughFood(message);
+            default:
+                throw new IllegalStateException("Command succeeded, there is no exception for it");
+        }
+    }
+}
@@ -0,0 +1,165 @@
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class is an open transaction of a commands file, started by BEGIN and ended by COMMIT or ROLLBACK
+ * Every stock debit made while it is open is logged as a stock index (see Warehouses) and grams in primitive arrays,
+ * rolling back credits them back newest first. The output of its commands is deferred until it is committed
+ * and dropped for the commands that are rolled back
+ * A savepoint remembers the size of the log, the length of the deferred output, the forecast rates
+ * and the size of the feeding log, so the transaction can also be rolled back to it and go on from there
+ */
+
+public class ZooTransaction {
+    private final Writer output;
+    private final StringWriter deferred = new StringWriter();
+    private final StockForecast forecastAtBegin;
+    private final FeedingLog feedingLog;
+    private final long feedingLogAtBegin;
+    private final List<Savepoint> savepoints = new ArrayList<>();
+
+    // The undo log, debit i took grams[i] from the stock with index stocks[i]
+    private int[] stocks = new int[64];
+    private long[] grams = new long[64];
+    private int size;
+
+    // Where the output of the command being run starts in the deferred output
+    private int commandStart;
+    private int commands;
+
+    /*
+    Starts a transaction writing to the output, feedingLog is null when feedings are not logged
+     */
+    public ZooTransaction(Writer output, StockForecast forecast, FeedingLog feedingLog) {
+        this.output = output;
+        this.forecastAtBegin = forecast.copy();
+        this.feedingLog = feedingLog;
+        this.feedingLogAtBegin = feedingLog == null ? 0 : feedingLog.size();
+    }
+
+    /*
+    Records a debit, feedings of several threads can be logged at the same time
+     */
+    public synchronized void logDebit(int stock, long amount) {
+        if (size == grams.length) {
+            stocks = Arrays.copyOf(stocks, size * 2);
+            grams = Arrays.copyOf(grams, size * 2);
+        }
+        stocks[size] = stock;
+        grams[size++] = amount;
+    }
+
+    /*
+    Returns the Writer a command run in the transaction writes to, and marks where its output starts
+     */
+    public Writer startCommand() {
+        commandStart = deferred.getBuffer().length();
+        commands++;
+        return deferred;
+    }
+
+    public boolean isDeferred(Writer writer) {
+        return writer == deferred;
+    }
+
+    public void addSavepoint(String name, StockForecast forecast) {
+        removeSavepoint(name);
+        savepoints.add(new Savepoint(name, size, deferred.getBuffer().length(), commands, forecast.copy(),
+                feedingLog == null ? 0 : feedingLog.size()));
+    }
+
+    /**
+     * Undoes everything after the savepoint, the savepoint stays so it can be rolled back to again.
+     * The output of the undone commands is dropped, the output of the command doing the rollback is kept.
+     *
+     * @param name        the savepoint's name
+     * @param warehouses  the stock to credit the undone debits to
+     * @param forecast    the forecast whose rates are reset to the savepoint's
+     * @return number of commands undone, -1 if there is no savepoint with that name
+     * @throws IOException if the feeding log cannot be truncated
+     */
+    public int rollbackTo(String name, Warehouses warehouses, StockForecast forecast) throws IOException {
+        for (int i = savepoints.size() - 1; i >= 0; i--) {
+            Savepoint savepoint = savepoints.get(i);
+            if (savepoint.name.equals(name)) {
+                savepoints.subList(i + 1, savepoints.size()).clear();
+                undo(savepoint.logSize, warehouses);
+                forecast.restore(savepoint.forecast);
+                if (feedingLog != null) {
+                    feedingLog.truncate(savepoint.feedingLogSize);
+                }
+                return dropOutput(savepoint.outputLength, savepoint.commands);
+            }
+        }
+        return -1;
+    }
+
+    /*
+    Undoes the whole transaction, only the output of the rolling back command is kept.
+    Returns the number of commands undone
+     */
+    public int rollback(Warehouses warehouses, StockForecast forecast) throws IOException {
+        undo(0, warehouses);
+        forecast.restore(forecastAtBegin);
+        if (feedingLog != null) {
+            feedingLog.truncate(feedingLogAtBegin);
+        }
+        return dropOutput(0, 0);
+    }
+
+    /*
+    Returns the number of commands run in the transaction before the current one
+     */
+    public int getCommandsBefore() {
+        return commands - 1;
+    }
+
+    /*
+    Ends the transaction after a commit or rollback by writing the deferred output that is left
+     */
+    public void finish() throws IOException {
+        output.append(deferred.getBuffer());
+    }
+
+    private synchronized void undo(int logSize, Warehouses warehouses) {
+        while (size > logSize) {
+            size--;
+            warehouses.getStock(stocks[size]).credit(grams[size]);
+        }
+    }
+
+    // Drops the output from the given length up to the current command, returns how many commands it belonged to
+    private int dropOutput(int outputLength, int commandsBefore) {
+        deferred.getBuffer().delete(outputLength, commandStart);
+        commandStart = outputLength;
+        int undone = commands - 1 - commandsBefore;
+        commands = commandsBefore + 1;
+        return undone;
+    }
+
+    private void removeSavepoint(String name) {
+        savepoints.removeIf(savepoint -> savepoint.name.equals(name));
+    }
+
+    private static class Savepoint {
+        final String name;
+        final int logSize;
+        final int outputLength;
+        final int commands;
+        final StockForecast forecast;
+        final long feedingLogSize;
+
+        Savepoint(String name, int logSize, int outputLength, int commands, StockForecast forecast, long feedingLogSize) {
+            this.name = name;
+            this.logSize = logSize;
+            this.outputLength = outputLength;
+            this.commands = commands;
+            this.forecast = forecast;
+            this.feedingLogSize = feedingLogSize;
+        }
+    }
+}